@@ -0,0 +1,80 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * {@code CatalogGenerator} builds isolated {@link ProductManager} over temporary folders
+ * and fills it with generated products and reviews
+ * @author mserge
+ * @version 1
+ */
+final class CatalogGenerator {
+    static final int FIRST_ID = 1000;
+
+    private CatalogGenerator() {
+    }
+
+    /**
+     * @param folder empty folder for data, reports and snapshots of the manager
+     * @param products number of products, ids start from {@link #FIRST_ID}, every second product is food
+     * @param reviewsPerProduct number of reviews of each product
+     * @return manager with journal disabled, to be closed by the benchmark
+     */
+    static ProductManager generate(Path folder, int products, int reviewsPerProduct) throws IOException {
+        ProductManager pm = ProductManager.newInstance(settings(folder));
+        Random random = new Random(products);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < products; i++) {
+            int id = FIRST_ID + i;
+            BigDecimal price = BigDecimal.valueOf(50 + random.nextInt(1000), 2);
+            if (i % 2 == 0) {
+                pm.createProduct(id, "Food " + id, price, Rating.NOT_RATED, today.plusDays(random.nextInt(20) - 10));
+            } else {
+                pm.createProduct(id, "Drink " + id, price, Rating.NOT_RATED);
+            }
+            for (int j = 0; j < reviewsPerProduct; j++) {
+                pm.reviewProduct(id, Rateable.convert(1 + random.nextInt(5)), "Generated review " + j);
+            }
+        }
+        return pm;
+    }
+
+    static Map<String, String> settings(Path folder) throws IOException {
+        return Map.of(
+                "data.folder", Files.createDirectories(folder.resolve("data")).toString(),
+                "reports.folder", Files.createDirectories(folder.resolve("reports")).toString(),
+                "temp.folder", folder.resolve("temp").toString(),
+                "journal.folder", folder.resolve("journal").toString(),
+                "journal.enabled", "false");
+    }
+
+    /**
+     * @return product line in {@code product.data.format} layout
+     */
+    static String productLine(int id) {
+        return id % 2 == 0
+                ? "F," + id + ",Food " + id + ",1.99,3,2020-10-20"
+                : "D," + id + ",Drink " + id + ",2.49,4,2020-10-20";
+    }
+
+    /**
+     * @return review line in {@code review.data.format} layout
+     */
+    static String reviewLine(int i) {
+        return (1 + i % 5) + ",Generated review " + i;
+    }
+
+    static void delete(Path folder) throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code DataParserBenchmark} measures parsing of data lines through {@link ProductManager}
+ * @author mserge
+ * @version 1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataParserBenchmark {
+    private static final int LINES = 1024;
+
+    private Path folder;
+    private ProductManager pm;
+    private final String[] productLines = new String[LINES];
+    private final String[] reviewLines = new String[LINES];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int advance() {
+            return next = (next + 1) & (LINES - 1);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("pm-bench");
+        pm = CatalogGenerator.generate(folder, 0, 0);
+        for (int i = 0; i < LINES; i++) {
+            productLines[i] = CatalogGenerator.productLine(CatalogGenerator.FIRST_ID + i);
+            reviewLines[i] = CatalogGenerator.reviewLine(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pm.close();
+        CatalogGenerator.delete(folder);
+    }
+
+    @Benchmark
+    public Product parseProduct(Cursor cursor) {
+        return pm.parseProduct(productLines[cursor.advance()]);
+    }
+
+    @Benchmark
+    public Review parseReview(Cursor cursor) {
+        return pm.parseReview(reviewLines[cursor.advance()]);
+    }
+}
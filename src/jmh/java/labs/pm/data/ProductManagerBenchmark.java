@@ -0,0 +1,105 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code ProductManagerBenchmark} measures hot paths of {@link ProductManager} over generated catalog.
+ * Listing output is sent to null stream, reports are written to temporary folder.
+ * @author mserge
+ * @version 1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductManagerBenchmark {
+    @Param({"1000", "100000"})
+    public int catalogSize;
+
+    @Param({"10"})
+    public int reviewsPerProduct;
+
+    private Path folder;
+    private ProductManager pm;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("pm-bench");
+        pm = CatalogGenerator.generate(folder, catalogSize, reviewsPerProduct);
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(out);
+        pm.close();
+        CatalogGenerator.delete(folder);
+    }
+
+    private int randomId() {
+        return CatalogGenerator.FIRST_ID + ThreadLocalRandom.current().nextInt(catalogSize);
+    }
+
+    @Benchmark
+    public Product findProduct() throws ProductManagerException {
+        return pm.findProduct(randomId());
+    }
+
+    /**
+     * reviews of random products from several threads, contention only on shared lock stripes
+     */
+    @Benchmark
+    @Threads(4)
+    public Product reviewProductSpread() {
+        return pm.reviewProduct(randomId(), Rating.FOUR_STAR, "Benchmark review");
+    }
+
+    /**
+     * reviews of one product from several threads, worst case contention
+     */
+    @Benchmark
+    @Threads(4)
+    public Product reviewProductHot() {
+        return pm.reviewProduct(CatalogGenerator.FIRST_ID, Rating.FOUR_STAR, "Benchmark review");
+    }
+
+    @Benchmark
+    public Map<String, String> getDiscounts() {
+        return pm.getDiscounts("en-GB");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void printProducts() {
+        pm.printProducts(p -> p.getPrice().doubleValue() < 5, Comparator.comparing(Product::getRating), "en-GB");
+    }
+
+    @Benchmark
+    public List<Product> findTopRatedCheap() {
+        return pm.findProducts(new ProductQuery()
+                .priceBetween(null, BigDecimal.valueOf(5))
+                .orderBy(ProductQuery.Order.RATING, true)
+                .limit(10));
+    }
+
+    @Benchmark
+    public void printProductReport() {
+        pm.printProductReport(randomId(), "en-GB", "bench");
+    }
+}
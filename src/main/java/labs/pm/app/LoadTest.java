@@ -0,0 +1,239 @@
+package labs.pm.app;
+
+import labs.pm.data.LatencyHistogram;
+import labs.pm.data.ProductManager;
+import labs.pm.data.Rating;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code LoadTest} runs clients calling {@link ProductManager} in a loop for given time
+ * and prints throughput and latency percentiles of each operation.
+ * <p>
+ * Settings are read from {@code load.properties} and may be replaced by {@code key=value} arguments:
+ * number of clients, duration in seconds, product id range, weights of locales and of operations,
+ * and {@code virtual} or {@code platform} threads. Virtual threads are looked up at run time,
+ * so on Java runtime without them clients run on platform threads.
+ * @author mserge
+ * @version 1
+ */
+class LoadTest {
+    private static final Logger logger = Logger.getLogger(LoadTest.class.getName());
+
+    enum Operation {
+        FIND, DISCOUNTS, REVIEW, REPORT
+    }
+
+    private final ProductManager pm;
+    private final int clients;
+    private final long durationNanos;
+    private final int firstId;
+    private final int lastId;
+    private final List<String> locales = new ArrayList<>();
+    private final int[] localeWeights;
+    private final Operation[] operations = Operation.values();
+    private final int[] operationWeights = new int[operations.length];
+    private String threads;
+
+    private static class Client {
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, Integer> errors = new EnumMap<>(Operation.class);
+
+        private Client() {
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+                errors.put(operation, 0);
+            }
+        }
+    }
+
+    /**
+     * @param args {@code key=value} pairs replacing settings from {@code load.properties}
+     */
+    LoadTest(ProductManager pm, String... args) {
+        ResourceBundle defaults = ResourceBundle.getBundle("load");
+        Map<String, String> settings = new HashMap<>();
+        defaults.keySet().forEach(key -> settings.put(key, defaults.getString(key)));
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !settings.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown load setting " + arg);
+            }
+            settings.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        this.pm = pm;
+        clients = Integer.parseInt(settings.get("clients"));
+        durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(settings.get("duration")));
+        String[] ids = settings.get("ids").split("-");
+        firstId = Integer.parseInt(ids[0].trim());
+        lastId = Integer.parseInt(ids[ids.length - 1].trim());
+        List<Integer> weights = new ArrayList<>();
+        parseWeights(settings.get("locales"), (name, weight) -> {
+            if (!ProductManager.isSupportedLocale(name)) {
+                throw new IllegalArgumentException("Unsupported locale " + name);
+            }
+            locales.add(name);
+            weights.add(weight);
+        });
+        localeWeights = cumulative(weights.stream().mapToInt(Integer::intValue).toArray());
+        parseWeights(settings.get("mix"), (name, weight) ->
+                operationWeights[Operation.valueOf(name.toUpperCase()).ordinal()] = weight);
+        cumulative(operationWeights);
+        threads = settings.get("threads");
+    }
+
+    /**
+     * Runs clients until duration passes and prints results
+     */
+    void run() {
+        ExecutorService executor = newExecutor();
+        List<Future<Client>> results = new ArrayList<>(clients);
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        for (int i = 0; i < clients; i++) {
+            String clientName = "load" + i;
+            results.add(executor.submit(() -> runClient(clientName, deadline)));
+        }
+        Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        Map<Operation, Integer> errors = new EnumMap<>(Operation.class);
+        for (Operation operation : operations) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, 0);
+        }
+        try {
+            for (Future<Client> result : results) {
+                Client client = result.get();
+                client.latencies.forEach((operation, histogram) -> latencies.get(operation).add(histogram));
+                client.errors.forEach((operation, count) -> errors.merge(operation, count, Integer::sum));
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            logger.log(Level.SEVERE, "Error running load " + e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        print(latencies, errors, elapsed);
+    }
+
+    private Client runClient(String clientName, long deadline) {
+        Client client = new Client();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            Operation operation = operations[pick(operationWeights, random)];
+            int id = random.nextInt(firstId, lastId + 1);
+            String languageTag = locales.get(pick(localeWeights, random));
+            long begin = System.nanoTime();
+            boolean done;
+            try {
+                done = call(operation, id, languageTag, clientName);
+            } catch (Exception e) {
+                done = false;
+            }
+            client.latencies.get(operation).record(System.nanoTime() - begin);
+            if (!done) {
+                client.errors.merge(operation, 1, Integer::sum);
+            }
+        }
+        return client;
+    }
+
+    private boolean call(Operation operation, int id, String languageTag, String clientName) throws Exception {
+        switch (operation) {
+            case FIND:
+                return pm.findProduct(id) != null;
+            case DISCOUNTS:
+                return pm.getDiscounts(languageTag) != null;
+            case REVIEW:
+                return pm.reviewProduct(id, Rating.FOUR_STAR, "Generated review") != null;
+            case REPORT:
+                pm.submitProductReport(id, languageTag, clientName).join();
+                return true;
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    private void print(Map<Operation, LatencyHistogram> latencies, Map<Operation, Integer> errors, long elapsed) {
+        double seconds = elapsed / 1e9;
+        StringBuilder txt = new StringBuilder();
+        txt.append(String.format("%d clients on %s threads, %.1f s%n", clients, threads, seconds));
+        txt.append(String.format("%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "ops/s", "p50 us", "p99 us", "p999 us", "max us"));
+        LatencyHistogram all = new LatencyHistogram();
+        for (Operation operation : operations) {
+            LatencyHistogram histogram = latencies.get(operation);
+            all.add(histogram);
+            txt.append(format(operation.name().toLowerCase(), histogram, errors.get(operation), seconds));
+        }
+        txt.append(format("total", all, errors.values().stream().mapToInt(Integer::intValue).sum(), seconds));
+        System.out.print(txt);
+    }
+
+    private static String format(String name, LatencyHistogram histogram, int errors, double seconds) {
+        return String.format("%-10s %10d %8d %10.0f %10.1f %10.1f %10.1f %10.1f%n",
+                name, histogram.getCount(), errors, histogram.getCount() / seconds,
+                histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3,
+                histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+    }
+
+    /**
+     * virtual thread per client when runtime has virtual threads, one platform thread per client otherwise
+     */
+    private ExecutorService newExecutor() {
+        if ("virtual".equals(threads)) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.log(Level.WARNING, "Virtual threads are not available, using platform threads");
+                threads = "platform";
+            }
+        }
+        return Executors.newFixedThreadPool(clients);
+    }
+
+    private interface WeightConsumer {
+        void accept(String name, int weight);
+    }
+
+    /**
+     * parses {@code name:weight} pairs separated by commas, weight is 1 when omitted
+     */
+    private static void parseWeights(String text, WeightConsumer consumer) {
+        for (String pair : text.split(",")) {
+            String[] parts = pair.trim().split(":");
+            consumer.accept(parts[0].trim(), parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1);
+        }
+    }
+
+    private static int[] cumulative(int[] weights) {
+        for (int i = 1; i < weights.length; i++) {
+            weights[i] += weights[i - 1];
+        }
+        if (weights.length == 0 || weights[weights.length - 1] <= 0) {
+            throw new IllegalArgumentException("Weights must not all be zero");
+        }
+        return weights;
+    }
+
+    private static int pick(int[] cumulativeWeights, ThreadLocalRandom random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (cumulativeWeights[i] <= value) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -3,8 +3,10 @@ package labs.pm.app;
 import labs.pm.data.*;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -19,9 +21,17 @@ import java.util.stream.Stream;
  */
 public class Shop {
     /**
-     * @param args string cmdline arguments
+     * @param args string cmdline arguments, {@code load} followed by {@code key=value} settings
+     *             runs load test instead of the demo, see {@link LoadTest}, on a separate manager
+     *             which does not write generated reviews to the journal
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("load")) {
+            try (ProductManager pm = ProductManager.newInstance(Map.of("journal.enabled", "false", "data.watch", "false"))) {
+                new LoadTest(pm, Arrays.copyOfRange(args, 1, args.length)).run();
+            }
+            return;
+        }
         ProductManager pm = ProductManager.getInstance();
         pm.createProduct(103, "Ice tea", BigDecimal.valueOf(1.99), Rating.NOT_RATED);
 //        pm.printProductReport(103);
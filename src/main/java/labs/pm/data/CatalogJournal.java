@@ -0,0 +1,418 @@
+package labs.pm.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * {@code CatalogJournal} is append only write ahead log of product creations and reviews.
+ * <p>
+ * Callers encode events and queue them, one writer thread appends queued events through {@link FileChannel}
+ * in batches of {@code batchSize} events or {@code batchMillis} milliseconds, whichever comes first,
+ * and forces each batch to disk according to {@link SyncPolicy}, so one fsync covers whole batch.
+ * Each record is its length, CRC32 checksum, event type and payload, replay stops at first torn record.
+ * <p>
+ * Journal is split into segments named by timestamp, {@link #roll(long)} starts new segment
+ * in queue order, so snapshot taken at the same moment covers exactly the segments before it.
+ * <p>
+ * Journal stops at first write error: events not written yet are dropped, waiters and later callers
+ * receive the error, they are never told that failed event is durable.
+ * @author mserge
+ * @version 1
+ */
+class CatalogJournal implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(CatalogJournal.class.getName());
+    private static final byte CREATE = 'C';
+    private static final byte REVIEW = 'R';
+    /**
+     * type of queued marker of new segment, marker carries timestamp of the segment and is not written
+     */
+    private static final byte SEGMENT = 'S';
+
+    /**
+     * when journal is forced to disk
+     */
+    enum SyncPolicy {
+        /**
+         * each batch is forced and writers wait until their event is on disk
+         */
+        ALWAYS,
+        /**
+         * each batch is forced, writers do not wait
+         */
+        BATCH,
+        /**
+         * batches are written, operating system decides when they reach disk
+         */
+        NEVER
+    }
+
+    /**
+     * receives events during replay
+     */
+    interface Listener {
+        void created(Product product);
+
+        void reviewed(int id, Rating rating, String comments);
+    }
+
+    private final Path folder;
+    private final String filePattern;
+    private final int batchSize;
+    private final long batchMillis;
+    private final SyncPolicy syncPolicy;
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition queued = queueLock.newCondition();
+    private final Condition synced = queueLock.newCondition();
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    private final Thread writer;
+    private long appendedSequence;
+    private long durableSequence;
+    private long currentStamp;
+    private boolean closed;
+    /**
+     * first write error, journal is stopped once it is set
+     */
+    private IOException failure;
+    private FileChannel channel;
+
+    /**
+     * @param folder journal folder, created if missing
+     * @param filePattern segment file name pattern with timestamp as {@code {0}}
+     * @param stamp timestamp of first segment, must be greater than stamps of existing segments
+     */
+    CatalogJournal(Path folder, String filePattern, long stamp, int batchSize, long batchMillis, SyncPolicy syncPolicy)
+            throws IOException {
+        this.folder = folder;
+        this.filePattern = filePattern;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchMillis = Math.max(0, batchMillis);
+        this.syncPolicy = syncPolicy;
+        Files.createDirectories(folder);
+        currentStamp = stamp;
+        channel = open(stamp);
+        writer = new Thread(this::writeLoop, "catalog-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param product created product
+     * @return sequence number of the event for {@link #awaitDurable(long)}
+     */
+    long logCreate(Product product) {
+        return append(encode(CREATE, out -> CatalogSnapshot.writeProduct(out, product)));
+    }
+
+    /**
+     * @return sequence number of the event for {@link #awaitDurable(long)}
+     */
+    long logReview(int id, Rating rating, String comments) {
+        return append(encode(REVIEW, out -> {
+            out.writeInt(id);
+            out.writeByte(rating.ordinal());
+            CatalogSnapshot.writeString(out, comments);
+        }));
+    }
+
+    /**
+     * Logs reviews of one product, events are queued at once
+     * @return sequence number of the last event for {@link #awaitDurable(long)}
+     */
+    long logReviews(int id, List<Review> reviews) {
+        List<byte[]> records = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            records.add(encode(REVIEW, out -> {
+                out.writeInt(id);
+                out.writeByte(review.getRating().ordinal());
+                CatalogSnapshot.writeString(out, review.getComments());
+            }));
+        }
+        return append(records);
+    }
+
+    /**
+     * Starts new segment after events queued so far, nothing is started when journal failed,
+     * so snapshot taken at the same moment is the only copy of later changes
+     * @param millis proposed timestamp of new segment
+     * @return timestamp actually used, greater than timestamp of current segment
+     */
+    long roll(long millis) {
+        try {
+            queueLock.lock();
+            currentStamp = Math.max(millis, currentStamp + 1);
+            if (failure == null) {
+                long stamp = currentStamp;
+                queue.add(encode(SEGMENT, out -> out.writeLong(stamp)));
+                appendedSequence++;
+                queued.signal();
+            }
+            return currentStamp;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until event is forced to disk when policy is {@link SyncPolicy#ALWAYS}, returns at once otherwise
+     * @param sequence sequence number returned by {@code log} methods
+     * @throws UncheckedIOException when journal failed before the event was written
+     */
+    void awaitDurable(long sequence) {
+        if (syncPolicy != SyncPolicy.ALWAYS) {
+            return;
+        }
+        try {
+            queueLock.lock();
+            while (durableSequence < sequence && failure == null && !closed) {
+                synced.await();
+            }
+            if (durableSequence < sequence && failure != null) {
+                throw new UncheckedIOException("Journal failed before event was written", failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Writes queued events and stops writer thread
+     */
+    @Override
+    public void close() {
+        try {
+            queueLock.lock();
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queued.signal();
+        } finally {
+            queueLock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Replays one segment
+     * @return number of replayed events
+     */
+    static int replay(Path segment, Listener listener) throws IOException {
+        int events = 0;
+        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= 8) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    logger.log(Level.WARNING, "Torn record at the end of " + segment);
+                    break;
+                }
+                ByteBuffer record = buffer.slice().limit(length);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    logger.log(Level.WARNING, "Corrupted record at the end of " + segment);
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                byte type = record.get();
+                if (type == CREATE) {
+                    listener.created(CatalogSnapshot.readProduct(record));
+                } else if (type == REVIEW) {
+                    int id = record.getInt();
+                    Rating rating = Rateable.convert(record.get());
+                    listener.reviewed(id, rating, CatalogSnapshot.readString(record));
+                } else {
+                    throw new IOException("Unknown journal event " + type + " in " + segment);
+                }
+                events++;
+            }
+        }
+        return events;
+    }
+
+    private long append(byte[] record) {
+        return append(List.of(record));
+    }
+
+    /**
+     * @throws UncheckedIOException when journal failed
+     */
+    private long append(List<byte[]> records) {
+        try {
+            queueLock.lock();
+            if (failure != null) {
+                throw new UncheckedIOException("Journal failed", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            boolean wasEmpty = queue.isEmpty();
+            queue.addAll(records);
+            if (wasEmpty || queue.size() >= batchSize) {
+                queued.signal();
+            }
+            appendedSequence += records.size();
+            return appendedSequence;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * encodes record on caller thread, so writer thread only copies bytes
+     */
+    private static byte[] encode(byte type, Payload payload) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(type);
+            payload.write(out);
+            byte[] record = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(record, 8, record.length - 8);
+            ByteBuffer.wrap(record).putInt(record.length - 8).putInt((int) crc.getValue());
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        List<byte[]> batch = new ArrayList<>();
+        while (true) {
+            long batchEnd;
+            try {
+                queueLock.lock();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchMillis);
+                while (!closed && (queue.isEmpty() || (queue.size() < batchSize && System.nanoTime() < deadline))) {
+                    if (queue.isEmpty()) {
+                        queued.await();
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchMillis);
+                    } else {
+                        queued.awaitNanos(deadline - System.nanoTime());
+                    }
+                }
+                if (closed && queue.isEmpty()) {
+                    break;
+                }
+                batch.addAll(queue);
+                queue.clear();
+                batchEnd = appendedSequence;
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                queueLock.unlock();
+            }
+            try {
+                writeBatch(batch, buffer);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error writing journal, journal is stopped " + e.getMessage(), e);
+                try {
+                    queueLock.lock();
+                    failure = e;
+                    queue.clear();
+                    synced.signalAll();
+                } finally {
+                    queueLock.unlock();
+                }
+                break;
+            }
+            batch.clear();
+            try {
+                queueLock.lock();
+                durableSequence = batchEnd;
+                synced.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error closing journal " + e.getMessage(), e);
+        }
+        try {
+            queueLock.lock();
+            synced.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void writeBatch(List<byte[]> batch, ByteBuffer buffer) throws IOException {
+        for (byte[] record : batch) {
+            if (record[8] == SEGMENT) {
+                flush(buffer);
+                sync();
+                FileChannel next = open(ByteBuffer.wrap(record, 9, 8).getLong());
+                channel.close();
+                channel = next;
+            } else if (record.length > buffer.capacity()) {
+                flush(buffer);
+                ByteBuffer large = ByteBuffer.wrap(record);
+                while (large.hasRemaining()) {
+                    channel.write(large);
+                }
+            } else {
+                if (record.length > buffer.remaining()) {
+                    flush(buffer);
+                }
+                buffer.put(record);
+            }
+        }
+        flush(buffer);
+        sync();
+    }
+
+    private void flush(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void sync() throws IOException {
+        if (syncPolicy != SyncPolicy.NEVER) {
+            channel.force(false);
+        }
+    }
+
+    private FileChannel open(long stamp) throws IOException {
+        Path segment = folder.resolve(MessageFormat.format(filePattern, String.valueOf(stamp)));
+        return FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
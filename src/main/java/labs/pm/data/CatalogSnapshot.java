@@ -0,0 +1,208 @@
+package labs.pm.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * {@code CatalogSnapshot} writes and reads versioned binary snapshot of products and their reviews.
+ * <p>
+ * File starts with magic number, format version and number of products,
+ * followed by one length prefixed record per product:
+ * type, id, name, price, rating, best before epoch day of food, reviews as rating and comment.
+ * Strings are UTF-8 bytes prefixed by length. Price is scale and unscaled bytes prefixed by length
+ * as unsigned varint, which is one byte for prices up to 127 bytes. Records are read through memory mapping,
+ * window by window, so snapshot may be larger than one mapping.
+ * @author mserge
+ * @version 1
+ */
+final class CatalogSnapshot {
+    private static final int MAGIC = 0x504D534E;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4;
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private CatalogSnapshot() {
+    }
+
+    /**
+     * Writes snapshot to temporary file and moves it in place, so readers never see partial snapshot
+     * @param file target file
+     * @param products products to write
+     * @param reviews provides reviews of product by its position in {@code products}
+     * @throws IOException when file cannot be written
+     */
+    static void write(Path file, List<Product> products, IntFunction<List<Review>> reviews) throws IOException {
+        Path part = file.resolveSibling(file.getFileName() + ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(products.size());
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+            DataOutputStream record = new DataOutputStream(buffer);
+            for (int i = 0; i < products.size(); i++) {
+                buffer.reset();
+                writeProduct(record, products.get(i));
+                writeReviews(record, reviews.apply(i));
+                out.writeInt(buffer.size());
+                buffer.writeTo(out);
+            }
+        }
+        Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file snapshot file
+     * @param newReviews supplier of empty list for reviews of each product
+     * @return products with their reviews in snapshot order
+     * @throws IOException when file cannot be read, is not a snapshot or has unsupported version
+     */
+    static Map<Product, List<Review>> read(Path file, Supplier<List<Review>> newReviews) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+            if (size < HEADER_SIZE || window.getInt() != MAGIC) {
+                throw new IOException("Not a catalog snapshot " + file);
+            }
+            short version = window.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            int count = window.getInt();
+            Map<Product, List<Review>> products = new LinkedHashMap<>(count * 2);
+            long windowStart = 0;
+            for (int i = 0; i < count; i++) {
+                if (window.remaining() < 4) {
+                    windowStart += window.position();
+                    window = map(channel, windowStart, size);
+                }
+                int length = window.getInt(window.position());
+                if (window.remaining() < 4 + length) {
+                    windowStart += window.position();
+                    window = map(channel, windowStart, size);
+                    if (window.remaining() < 4 + length) {
+                        throw new IOException("Truncated snapshot " + file);
+                    }
+                }
+                window.getInt();
+                int end = window.position() + length;
+                Product product = readProduct(window);
+                List<Review> reviews = readReviews(window, newReviews.get());
+                if (window.position() != end) {
+                    throw new IOException("Corrupted record of product " + product.getId() + " in " + file);
+                }
+                products.put(product, reviews);
+            }
+            return products;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, WINDOW_SIZE));
+    }
+
+    static void writeProduct(DataOutputStream out, Product product) throws IOException {
+        boolean food = product instanceof Food;
+        out.writeByte(food ? 'F' : 'D');
+        out.writeInt(product.getId());
+        writeString(out, product.getName());
+        BigDecimal price = product.getPrice();
+        out.writeInt(price.scale());
+        byte[] unscaled = price.unscaledValue().toByteArray();
+        writeVarInt(out, unscaled.length);
+        out.write(unscaled);
+        out.writeByte(product.getRating().ordinal());
+        if (food) {
+            out.writeLong(product.getBestBefore().toEpochDay());
+        }
+    }
+
+    private static void writeReviews(DataOutputStream out, List<Review> reviews) throws IOException {
+        out.writeInt(reviews.size());
+        for (Review review : reviews) {
+            out.writeByte(review.getRating().ordinal());
+            writeString(out, review.getComments());
+        }
+    }
+
+    static Product readProduct(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        int id = in.getInt();
+        String name = readString(in);
+        int scale = in.getInt();
+        byte[] unscaled = new byte[readVarInt(in)];
+        in.get(unscaled);
+        BigDecimal price = new BigDecimal(new BigInteger(unscaled), scale);
+        Rating rating = Rateable.convert(in.get());
+        switch (type) {
+            case 'D':
+                return new Drink(id, name, price, rating);
+            case 'F':
+                return new Food(id, name, price, rating, LocalDate.ofEpochDay(in.getLong()));
+            default:
+                throw new IOException("Unknown product type " + type + " of product " + id);
+        }
+    }
+
+    private static List<Review> readReviews(ByteBuffer in, List<Review> reviews) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            Rating rating = Rateable.convert(in.get());
+            reviews.add(new Review(rating, readString(in)));
+        }
+        return reviews;
+    }
+
+    /**
+     * writes 7 bits per byte, lowest first, high bit of byte tells that more bytes follow
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed length of price");
+    }
+
+    static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,196 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+import java.time.LocalDate;
+
+/**
+ * {@code DataParser} creates {@link Product} and {@link Review} from data lines
+ * laid out by {@code product.data.format} and {@code review.data.format} patterns.
+ * Numbers and dates are read straight from the characters of the line,
+ * only name and comment strings are allocated.
+ * Immutable and thread safe.
+ * @author mserge
+ * @version 1
+ */
+class DataParser {
+    private final RecordLayout productLayout;
+    private final RecordLayout reviewLayout;
+
+    DataParser(String productPattern, String reviewPattern) {
+        productLayout = new RecordLayout(productPattern);
+        reviewLayout = new RecordLayout(reviewPattern);
+    }
+
+    /**
+     * @param text line in {@code review.data.format} layout
+     * @return parsed review
+     * @throws ParseException when line does not match the layout
+     * @throws NumberFormatException when rating is not a number
+     */
+    Review parseReview(CharSequence text) throws ParseException {
+        int[] bounds = new int[reviewLayout.boundsLength()];
+        reviewLayout.split(text, bounds);
+        return new Review(
+                Rateable.convert(parseInt(text, bounds, 0)),
+                string(text, bounds, 1));
+    }
+
+    /**
+     * Reads only rating of review line, the line is checked same as by {@link #parseReview}
+     * but comment string is not created
+     * @param text line in {@code review.data.format} layout
+     * @return rating of the review
+     * @throws ParseException when line does not match the layout
+     * @throws NumberFormatException when rating is not a number
+     */
+    Rating parseReviewRating(CharSequence text) throws ParseException {
+        int[] bounds = new int[reviewLayout.boundsLength()];
+        reviewLayout.split(text, bounds);
+        start(bounds, 1);
+        return Rateable.convert(parseInt(text, bounds, 0));
+    }
+
+    /**
+     * @param text line in {@code product.data.format} layout
+     * @return parsed product
+     * @throws ParseException when line does not match the layout or product type is unknown
+     * @throws NumberFormatException when id, price or rating is not a number
+     * @throws java.time.DateTimeException when best before date of food is invalid
+     */
+    Product parseProduct(CharSequence text) throws ParseException {
+        int[] bounds = new int[productLayout.boundsLength()];
+        productLayout.split(text, bounds);
+        int typeStart = start(bounds, 0);
+        if (bounds[1] - typeStart != 1) {
+            throw new ParseException("Unknown product type", typeStart);
+        }
+        char type = text.charAt(typeStart);
+        int id = parseInt(text, bounds, 1);
+        String name = string(text, bounds, 2);
+        BigDecimal price = parsePrice(text, start(bounds, 3), bounds[7]);
+        Rating rating = Rateable.convert(parseInt(text, bounds, 4));
+        switch (type) {
+            case 'D':
+                return new Drink(id, name, price, rating);
+            case 'F':
+                return new Food(id, name, price, rating, parseDate(text, start(bounds, 5), bounds[11]));
+            default:
+                throw new ParseException("Unknown product type", typeStart);
+        }
+    }
+
+    private static int start(int[] bounds, int field) throws ParseException {
+        if (field * 2 >= bounds.length || bounds[field * 2] < 0) {
+            throw new ParseException("Field {" + field + "} is missing in data format", 0);
+        }
+        return bounds[field * 2];
+    }
+
+    private static String string(CharSequence text, int[] bounds, int field) throws ParseException {
+        int start = start(bounds, field);
+        int end = bounds[field * 2 + 1];
+        if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+            CharBuffer buffer = (CharBuffer) text;
+            return new String(buffer.array(), buffer.arrayOffset() + buffer.position() + start, end - start);
+        }
+        return text.subSequence(start, end).toString();
+    }
+
+    private static int parseInt(CharSequence text, int[] bounds, int field) throws ParseException {
+        int start = start(bounds, field);
+        int end = bounds[field * 2 + 1];
+        boolean negative = start < end && text.charAt(start) == '-';
+        int i = negative || (start < end && text.charAt(start) == '+') ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + text.subSequence(start, end) + "\"");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || (value = value * 10 + digit) > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("For input string: \"" + text.subSequence(start, end) + "\"");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + text.subSequence(start, end) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * plain decimals like {@code 1.99} are read digit by digit, other forms go through {@link Double#parseDouble(String)}
+     * as before; fast path gives the same value and scale as {@code BigDecimal.valueOf(double)},
+     * that is trailing zeros removed down to one fraction digit
+     */
+    private static BigDecimal parsePrice(CharSequence text, int start, int end) {
+        long unscaled = 0;
+        int scale = -1;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9' && digits < 15) {
+                unscaled = unscaled * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return BigDecimal.valueOf(Double.parseDouble(text.subSequence(start, end).toString()));
+            }
+        }
+        long unit = pow10(Math.max(scale, 0));
+        if (digits == 0 || unscaled / unit >= 10_000_000L || (unscaled != 0 && unscaled * 1000 < unit)) {
+            return BigDecimal.valueOf(Double.parseDouble(text.subSequence(start, end).toString()));
+        }
+        scale = Math.max(scale, 0);
+        while (scale > 1 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            scale--;
+        }
+        if (scale == 0) {
+            unscaled *= 10;
+            scale = 1;
+        }
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+    /**
+     * ISO {@code yyyy-MM-dd} dates are read digit by digit, other forms go through {@link LocalDate#parse(CharSequence)}
+     */
+    private static LocalDate parseDate(CharSequence text, int start, int end) {
+        if (end - start == 10 && text.charAt(start + 4) == '-' && text.charAt(start + 7) == '-') {
+            int year = digits(text, start, start + 4);
+            int month = digits(text, start + 5, start + 7);
+            int day = digits(text, start + 8, start + 10);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(text.subSequence(start, end));
+    }
+
+    private static int digits(CharSequence text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,189 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@code DataWatcher} watches data folder on its own thread and passes new product files
+ * and lines appended to review files to listener.
+ * <p>
+ * Review files are read from the offset after the last line passed, only complete lines are passed,
+ * so each change costs time of the appended data only. Review files present when watcher starts
+ * are read from the offsets given by catalog, lines appended since catalog read them are passed
+ * when watcher starts. Lines of review file whose product is not in catalog yet are kept unread
+ * and passed again after the next product file.
+ * When events were lost, whole folder is checked again.
+ * @author mserge
+ * @version 1
+ */
+class DataWatcher implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(DataWatcher.class.getName());
+
+    /**
+     * receives changes on watcher thread
+     */
+    interface Listener {
+        void productFile(Path file);
+
+        /**
+         * @param lines complete lines appended since previous call
+         * @return {@code false} when lines cannot be applied yet and should be passed again later
+         */
+        boolean reviewLines(Path file, List<String> lines);
+    }
+
+    private final Path folder;
+    private final PathMatcher productFiles;
+    private final PathMatcher reviewFiles;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Map<Path, Long> offsets = new HashMap<>();
+    private final Set<Path> pending = new LinkedHashSet<>();
+    private final Thread watcher;
+
+    /**
+     * @param offsets lengths of review files already read by catalog, other review files are read from the start
+     */
+    DataWatcher(Path folder, PathMatcher productFiles, PathMatcher reviewFiles, Map<Path, Long> offsets,
+                Listener listener) throws IOException {
+        this.folder = folder;
+        this.productFiles = productFiles;
+        this.reviewFiles = reviewFiles;
+        this.listener = listener;
+        this.offsets.putAll(offsets);
+        watchService = folder.getFileSystem().newWatchService();
+        try {
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+        watcher = new Thread(this::watchLoop, "data-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+            watcher.join();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing data watcher " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            list(reviewFiles).forEach(this::changed);
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else {
+                        changed.add(folder.resolve((Path) event.context()));
+                    }
+                }
+                if (overflow) {
+                    changed.addAll(list(productFiles));
+                    changed.addAll(list(reviewFiles));
+                }
+                changed.forEach(this::changed);
+                if (!key.reset()) {
+                    logger.log(Level.WARNING, "Data folder " + folder + " is no longer watched");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error watching data folder " + e.getMessage(), e);
+        }
+    }
+
+    private void changed(Path file) {
+        Path name = file.getFileName();
+        try {
+            if (productFiles.matches(name)) {
+                if (Files.size(file) > 0) {
+                    listener.productFile(file);
+                    for (Path reviews : new ArrayList<>(pending)) {
+                        tail(reviews);
+                    }
+                }
+            } else if (reviewFiles.matches(name)) {
+                tail(file);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot read changed data file " + file + " " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * passes complete lines after the offset of the file, offset moves past them when listener accepts them
+     */
+    private void tail(Path file) throws IOException {
+        long offset = offsets.getOrDefault(file, 0L);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                logger.log(Level.WARNING, "Review file " + file + " was truncated, reading it from the start");
+                offset = 0;
+            }
+            if (size - offset > Integer.MAX_VALUE) {
+                throw new IOException("Too much data appended to " + file);
+            }
+            ByteBuffer appended = ByteBuffer.allocate((int) (size - offset));
+            while (appended.hasRemaining() && channel.read(appended, offset + appended.position()) >= 0) {
+                // read until size
+            }
+            int end = appended.position();
+            while (end > 0 && appended.get(end - 1) != '\n') {
+                end--;
+            }
+            if (end == 0) {
+                return;
+            }
+            String text = new String(appended.array(), 0, end, StandardCharsets.UTF_8);
+            List<String> lines = text.lines().filter(line -> !line.isEmpty()).collect(Collectors.toList());
+            if (listener.reviewLines(file, lines)) {
+                offsets.put(file, offset + end);
+                pending.remove(file);
+            } else {
+                pending.add(file);
+            }
+        }
+    }
+
+    private List<Path> list(PathMatcher matcher) throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(file -> matcher.matches(file.getFileName())).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * {@code DiscountTotals} keeps sums of product discounts by rating, updated as products are added or re-rated.
+ * <p>
+ * Drinks are discounted only in happy hour and food only after its best before date,
+ * so totals are kept separately for drinks, expired food and food by best before date.
+ * Current totals are recomputed only when clock passes the next boundary where discounts change:
+ * start or end of happy hour or start of the next day.
+ * @author mserge
+ * @version 1
+ */
+class DiscountTotals {
+    private static final int RATINGS = Rating.values().length;
+
+    private final int[] counts = new int[RATINGS];
+    private final BigDecimal[] drinks = zeros();
+    private final BigDecimal[] expiredFood = zeros();
+    private final TreeMap<LocalDate, BigDecimal[]> freshFood = new TreeMap<>();
+    private final BigDecimal[] totals = zeros();
+    private boolean happyHour;
+    private LocalDate today = LocalDate.MIN;
+    private long nextBoundary = Long.MIN_VALUE;
+
+    synchronized void add(Product product) {
+        update(product, product.getRating(), 1);
+    }
+
+    /**
+     * moves product discount from rating of old product to rating of new one
+     */
+    synchronized void rerate(Product oldProduct, Product newProduct) {
+        update(oldProduct, oldProduct.getRating(), -1);
+        update(newProduct, newProduct.getRating(), 1);
+    }
+
+    synchronized void reset(Collection<Product> products) {
+        Arrays.fill(counts, 0);
+        Arrays.fill(drinks, BigDecimal.ZERO);
+        Arrays.fill(expiredFood, BigDecimal.ZERO);
+        freshFood.clear();
+        nextBoundary = Long.MIN_VALUE;
+        today = LocalDate.MIN;
+        products.forEach(this::add);
+    }
+
+    /**
+     * @return sum of current discounts of each rating that has products
+     */
+    synchronized Map<Rating, BigDecimal> getTotals() {
+        if (System.currentTimeMillis() >= nextBoundary) {
+            advanceClock(LocalDateTime.now());
+        }
+        Map<Rating, BigDecimal> result = new EnumMap<>(Rating.class);
+        for (Rating rating : Rating.values()) {
+            if (counts[rating.ordinal()] > 0) {
+                result.put(rating, totals[rating.ordinal()]);
+            }
+        }
+        return result;
+    }
+
+    private void update(Product product, Rating rating, int sign) {
+        int r = rating.ordinal();
+        BigDecimal discount = sign > 0 ? product.getFullDiscount() : product.getFullDiscount().negate();
+        counts[r] += sign;
+        if (product instanceof Food) {
+            if (product.getBestBefore().isBefore(today)) {
+                expiredFood[r] = expiredFood[r].add(discount);
+                totals[r] = totals[r].add(discount);
+            } else {
+                BigDecimal[] bucket = freshFood.computeIfAbsent(product.getBestBefore(), date -> zeros());
+                bucket[r] = bucket[r].add(discount);
+            }
+        } else {
+            drinks[r] = drinks[r].add(discount);
+            if (happyHour) {
+                totals[r] = totals[r].add(discount);
+            }
+        }
+    }
+
+    /**
+     * expires food of passed days and recomputes totals, then finds next boundary
+     */
+    private void advanceClock(LocalDateTime now) {
+        LocalDate date = now.toLocalDate();
+        if (date.isAfter(today)) {
+            SortedMap<LocalDate, BigDecimal[]> expired = freshFood.headMap(date);
+            for (BigDecimal[] bucket : expired.values()) {
+                for (int r = 0; r < RATINGS; r++) {
+                    expiredFood[r] = expiredFood[r].add(bucket[r]);
+                }
+            }
+            expired.clear();
+            today = date;
+        }
+        LocalTime time = now.toLocalTime();
+        happyHour = time.isAfter(Drink.HAPPY_HOUR_START) && time.isBefore(Drink.HAPPY_HOUR_END);
+        for (int r = 0; r < RATINGS; r++) {
+            totals[r] = happyHour ? expiredFood[r].add(drinks[r]) : expiredFood[r];
+        }
+        LocalDateTime boundary;
+        if (time.isBefore(Drink.HAPPY_HOUR_START)) {
+            boundary = date.atTime(Drink.HAPPY_HOUR_START);
+        } else if (time.equals(Drink.HAPPY_HOUR_START)) {
+            boundary = now.plusNanos(1_000_000);
+        } else if (time.isBefore(Drink.HAPPY_HOUR_END)) {
+            boundary = date.atTime(Drink.HAPPY_HOUR_END);
+        } else {
+            boundary = date.plusDays(1).atStartOfDay();
+        }
+        nextBoundary = boundary.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static BigDecimal[] zeros() {
+        BigDecimal[] zeros = new BigDecimal[RATINGS];
+        Arrays.fill(zeros, BigDecimal.ZERO);
+        return zeros;
+    }
+}
@@ -4,6 +4,12 @@ import java.math.BigDecimal;
 import java.time.LocalTime;
 
 public class Drink extends Product{
+    /**
+     * drinks are discounted strictly between start and end of happy hour
+     */
+    static final LocalTime HAPPY_HOUR_START = LocalTime.of(17, 30);
+    static final LocalTime HAPPY_HOUR_END = LocalTime.of(19, 30);
+
      Drink(int id, String name, BigDecimal price, Rating rating) {
         super(id, name, price, rating);
     }
@@ -11,7 +17,7 @@ public class Drink extends Product{
     @Override
     public BigDecimal getDiscount() {
         LocalTime now = LocalTime.now();
-        return (now.isAfter(LocalTime.of(17, 30)) && now.isBefore(LocalTime.of(19, 30)))
+        return (now.isAfter(HAPPY_HOUR_START) && now.isBefore(HAPPY_HOUR_END))
         ? super.getDiscount(): BigDecimal.ZERO;
     }
 
@@ -0,0 +1,111 @@
+package labs.pm.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code LatencyHistogram} counts latencies in nanoseconds in log linear buckets:
+ * each power of two range is split into 32 buckets, so percentiles are within about 3% of recorded values.
+ * Recording is lock free and may be done from several threads.
+ * @author mserge
+ * @version 1
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos latency in nanoseconds, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * adds all latencies recorded by other histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = other.counts.get(i);
+            if (bucketCount > 0) {
+                counts.addAndGet(i, bucketCount);
+            }
+        }
+        count.add(other.count.sum());
+        total.add(other.total.sum());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return mean latency in nanoseconds, 0 when nothing was recorded
+     */
+    public double getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) total.sum() / recorded;
+    }
+
+    /**
+     * @param percentile percentile from 0 to 100, for example 99.9
+     * @return highest latency of the bucket holding the percentile, 0 when nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long recorded = count.sum();
+        if (recorded == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    private static int bucket(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long highestValue(int bucket) {
+        int shift = Math.max(0, bucket / SUB_BUCKETS - 1);
+        long mantissa = bucket - (long) shift * SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
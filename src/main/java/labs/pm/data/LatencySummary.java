@@ -0,0 +1,54 @@
+package labs.pm.data;
+
+/**
+ * {@code LatencySummary} is a copy of {@link LatencyHistogram} figures taken at one moment,
+ * latencies are in microseconds.
+ * @author mserge
+ * @version 1
+ */
+public class LatencySummary {
+    private final long count;
+    private final double mean;
+    private final double p50;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    LatencySummary(LatencyHistogram histogram) {
+        count = histogram.getCount();
+        mean = histogram.getMean() / 1e3;
+        p50 = histogram.getPercentile(50) / 1e3;
+        p99 = histogram.getPercentile(99) / 1e3;
+        p999 = histogram.getPercentile(99.9) / 1e3;
+        max = histogram.getMax() / 1e3;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%.1f p99=%.1f p999=%.1f max=%.1f", count, mean, p50, p99, p999, max);
+    }
+}
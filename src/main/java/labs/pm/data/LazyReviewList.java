@@ -0,0 +1,117 @@
+package labs.pm.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * {@code LazyReviewList} is list of reviews of one product whose reviews from review file
+ * are read only when list is read, and are kept in {@link ReviewCache} until evicted.
+ * Reviews added after load are kept in memory after reviews of the file.
+ * Rating summary of the file is computed when list is created, so rating and number of reviews
+ * are known without reading the reviews again.
+ * Reviews are read again only from the part of the file which was summarized. When the file was replaced
+ * or truncated since and yields different number of reviews, list takes the reviews read now,
+ * rating summary keeps the ratings summarized at load.
+ * List is not thread safe, it is guarded by the lock of its product.
+ * @author mserge
+ * @version 1
+ */
+class LazyReviewList extends AbstractList<Review> {
+    private static final Logger logger = Logger.getLogger(LazyReviewList.class.getName());
+
+    private final int id;
+    private final RatingSummary fileSummary;
+    /**
+     * number of reviews of the file, changes only when the file no longer yields the summarized reviews
+     */
+    private volatile int fileCount;
+    private final ReviewCache cache;
+    private final Supplier<List<Review>> loader;
+    private final List<Review> added;
+
+    /**
+     * @param fileSummary summary of reviews in the file
+     * @param loader reads the same reviews of the file as were summarized
+     * @param added empty list for reviews added later
+     */
+    LazyReviewList(int id, RatingSummary fileSummary, ReviewCache cache, Supplier<List<Review>> loader, List<Review> added) {
+        this(id, fileSummary, fileSummary.getCount(), cache, loader, added);
+    }
+
+    private LazyReviewList(int id, RatingSummary fileSummary, int fileCount, ReviewCache cache,
+                           Supplier<List<Review>> loader, List<Review> added) {
+        this.id = id;
+        this.fileSummary = fileSummary;
+        this.fileCount = fileCount;
+        this.cache = cache;
+        this.loader = loader;
+        this.added = added;
+    }
+
+    /**
+     * @return summary of reviews in the file, taken by catalog as rating summary of the product
+     * before any review is added
+     */
+    RatingSummary getFileSummary() {
+        return fileSummary;
+    }
+
+    /**
+     * @return list of the same reviews, reviews added later are not in it, reviews of the file are still read on use
+     */
+    LazyReviewList copy() {
+        return new LazyReviewList(id, fileSummary, fileCount, cache, loader, new ArrayList<>(added));
+    }
+
+    /**
+     * index is checked against reviews the file yields now, so reviews added later move down
+     * when the file lost reviews since it was scanned
+     */
+    @Override
+    public Review get(int index) {
+        List<Review> reviews = fileCount == 0 ? List.of() : fileReviews();
+        int count = reviews.size();
+        Objects.checkIndex(index, count + added.size());
+        return index < count ? reviews.get(index) : added.get(index - count);
+    }
+
+    @Override
+    public int size() {
+        return fileCount + added.size();
+    }
+
+    @Override
+    public boolean add(Review review) {
+        added.add(review);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * reviews of the file are taken from cache once for whole iteration
+     */
+    @Override
+    public Iterator<Review> iterator() {
+        return fileCount == 0 ? added.iterator() : Stream.concat(fileReviews().stream(), added.stream()).iterator();
+    }
+
+    /**
+     * @return reviews of the file, number of reviews of the file is taken from them when it differs
+     */
+    private List<Review> fileReviews() {
+        List<Review> reviews = cache.get(id, loader);
+        if (reviews.size() != fileCount) {
+            logger.log(Level.WARNING, "Review file of product " + id + " changed after it was scanned, "
+                    + reviews.size() + " reviews are read instead of " + fileCount);
+            fileCount = reviews.size();
+        }
+        return reviews;
+    }
+}
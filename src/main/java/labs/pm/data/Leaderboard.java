@@ -0,0 +1,126 @@
+package labs.pm.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.ToIntFunction;
+
+/**
+ * {@code Leaderboard} keeps products ordered from the best rated, products of equal rating
+ * ordered by number of reviews, the most reviewed first, and then by id.
+ * Food and drinks are kept in separate skip lists, so top products of one type are read
+ * from the head of its list and top products of both types by merging heads of both lists.
+ * <p>
+ * Position of product moves on each review, caller holds lock of the product.
+ * Lists keep only rating, number of reviews and id, products are taken from catalog.
+ * Updates may run concurrently with reading: new position is added before old one is removed,
+ * so reader may meet product twice and keeps its better position.
+ * @author mserge
+ * @version 1
+ */
+class Leaderboard {
+    private final ConcurrentSkipListSet<Entry> food = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<Entry> drinks = new ConcurrentSkipListSet<>();
+
+    /**
+     * position of product in leaderboard
+     */
+    static class Entry implements Comparable<Entry> {
+        private final Rating rating;
+        private final int reviews;
+        private final int id;
+
+        private Entry(Product product, int reviews) {
+            this.rating = product.getRating();
+            this.reviews = reviews;
+            this.id = product.getId();
+        }
+
+        int getId() {
+            return id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = other.rating.compareTo(rating);
+            if (result == 0) {
+                result = Integer.compare(other.reviews, reviews);
+            }
+            return result != 0 ? result : Integer.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && compareTo((Entry) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * rating.hashCode() + reviews) + id;
+        }
+    }
+
+    /**
+     * @param reviews number of reviews of the product
+     */
+    void add(Product product, int reviews) {
+        listOf(product).add(new Entry(product, reviews));
+    }
+
+    /**
+     * moves product after its reviews were added
+     */
+    void update(Product oldProduct, int oldReviews, Product newProduct, int newReviews) {
+        Entry entry = new Entry(newProduct, newReviews);
+        Entry oldEntry = new Entry(oldProduct, oldReviews);
+        if (!entry.equals(oldEntry)) {
+            listOf(newProduct).add(entry);
+            listOf(oldProduct).remove(oldEntry);
+        }
+    }
+
+    void reset(Collection<Product> products, ToIntFunction<Product> reviews) {
+        food.clear();
+        drinks.clear();
+        products.forEach(product -> add(product, reviews.applyAsInt(product)));
+    }
+
+    /**
+     * @param type {@link Food} or {@link Drink} for products of one type, {@code null} or {@link Product} for all products
+     * @return positions of at most {@code k} best products, the best first
+     */
+    List<Entry> top(int k, Class<? extends Product> type) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        Iterator<Entry> foodHead = type == Drink.class ? Collections.emptyIterator() : food.iterator();
+        Iterator<Entry> drinksHead = type == Food.class ? Collections.emptyIterator() : drinks.iterator();
+        List<Entry> result = new ArrayList<>(Math.min(k, 1024));
+        Set<Integer> ids = new HashSet<>();
+        Entry nextFood = foodHead.hasNext() ? foodHead.next() : null;
+        Entry nextDrink = drinksHead.hasNext() ? drinksHead.next() : null;
+        while (result.size() < k && (nextFood != null || nextDrink != null)) {
+            Entry entry;
+            if (nextDrink == null || nextFood != null && nextFood.compareTo(nextDrink) < 0) {
+                entry = nextFood;
+                nextFood = foodHead.hasNext() ? foodHead.next() : null;
+            } else {
+                entry = nextDrink;
+                nextDrink = drinksHead.hasNext() ? drinksHead.next() : null;
+            }
+            if (ids.add(entry.id)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private ConcurrentSkipListSet<Entry> listOf(Product product) {
+        return product instanceof Food ? food : drinks;
+    }
+}
@@ -0,0 +1,101 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * {@code MappedLines} reads UTF-8 text file through memory mapping,
+ * line ends are {@code \n}, {@code \r\n} or {@code \r} same as {@link java.nio.file.Files#lines(Path)}.
+ * Lines are decoded into one reusable {@link CharBuffer}, so no string is created per line.
+ * @author mserge
+ * @version 1
+ */
+final class MappedLines {
+
+    private MappedLines() {
+    }
+
+    /**
+     * @param file file not larger than {@link Integer#MAX_VALUE} bytes
+     * @param action called for each line in file order, line buffer is reused and must not be kept
+     * @throws IOException when file cannot be mapped or is not valid UTF-8
+     */
+    static void forEach(Path file, Consumer<CharSequence> action) throws IOException {
+        forEach(file, -1, action);
+    }
+
+    /**
+     * @param file file not larger than {@link Integer#MAX_VALUE} bytes
+     * @param length number of bytes from the file start to read, -1 for whole file,
+     *               lines appended to the file after it are not read
+     * @param action called for each line in file order, line buffer is reused and must not be kept
+     * @throws IOException when file cannot be mapped or is not valid UTF-8
+     */
+    static void forEach(Path file, long length, Consumer<CharSequence> action) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = length < 0 ? channel.size() : Math.min(length, channel.size());
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            CharBuffer line = CharBuffer.allocate(256);
+            int limit = buffer.limit();
+            int start = 0;
+            for (int i = 0; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    line = decode(buffer, start, i, line, decoder);
+                    action.accept(line);
+                    if (b == '\r' && i + 1 < limit && buffer.get(i + 1) == '\n') {
+                        i++;
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start < limit) {
+                line = decode(buffer, start, limit, line, decoder);
+                action.accept(line);
+            }
+        }
+    }
+
+    /**
+     * ASCII bytes are widened in place, lines with other characters go through the decoder
+     * @return flipped line buffer, same as {@code line} unless it had to grow
+     */
+    private static CharBuffer decode(ByteBuffer buffer, int start, int end, CharBuffer line, CharsetDecoder decoder)
+            throws CharacterCodingException {
+        if (line.capacity() < end - start) {
+            line = CharBuffer.allocate(Math.max(end - start, line.capacity() << 1));
+        }
+        line.clear();
+        char[] chars = line.array();
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < 0) {
+                line.clear();
+                decoder.reset();
+                ByteBuffer bytes = buffer.duplicate().limit(end).position(start);
+                CoderResult result = decoder.decode(bytes, line, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                decoder.flush(line);
+                return line.flip();
+            }
+            chars[i - start] = (char) b;
+        }
+        return line.position(end - start).flip();
+    }
+}
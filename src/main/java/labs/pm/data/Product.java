@@ -61,6 +61,13 @@ public abstract class Product implements Rateable<Product>, Serializable {
      * @return amount of discount applied to price
      */
     public  BigDecimal getDiscount() {
+        return getFullDiscount();
+    }
+
+    /**
+     * @return amount of discount when product is discounted, regardless of time
+     */
+    BigDecimal getFullDiscount() {
         return this.price.multiply(DISCOUNT_RATE).setScale(2, RoundingMode.HALF_UP);
     }
 
@@ -0,0 +1,221 @@
+package labs.pm.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@code ProductColumns} is {@link ProductIndex} keeping products in primitive columns instead of objects:
+ * ids, prices as unscaled {@code long} and scale, rating ordinals, type tags, best before epoch days
+ * and UTF-8 names in one byte array. Rows are dense, so scans read arrays sequentially,
+ * ids are mapped to rows by open addressing table of plain {@code int}s.
+ * {@link Product} objects are created on demand as views of a row.
+ * Rating histograms of reviews are one {@code int} column, {@link RatingSummary} of a product
+ * is a view of its row, valid until next product is added.
+ * <p>
+ * Product of existing id is replaced only by re-rating, so replacing stores only new rating,
+ * which concurrent readers see without locking.
+ * Prices which do not fit into {@code long} are kept aside as {@link BigDecimal}.
+ * @author mserge
+ * @version 1
+ */
+class ProductColumns implements ProductIndex {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final byte DRINK = 0;
+    private static final byte FOOD = 1;
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private int[] ids;
+    private long[] priceUnits;
+    private byte[] priceScales;
+    private byte[] ratings;
+    private int[] histograms;
+    private Object[] reviews;
+    private byte[] types;
+    private int[] bestBefore;
+    private int[] nameOffsets;
+    private byte[] names;
+    private int namesLength;
+    private final Map<Integer, BigDecimal> largePrices = new ConcurrentHashMap<>();
+    private int size;
+    /**
+     * id to row table, slot holds row + 1, 0 marks empty slot
+     */
+    private int[] slotIds;
+    private int[] slotRows;
+    private int mask;
+
+    ProductColumns() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public Product get(int id) {
+        int row = rowOf(id);
+        return row < 0 ? null : view(row);
+    }
+
+    @Override
+    public Product put(Product product) {
+        int row = rowOf(product.getId());
+        if (row < 0) {
+            return null;
+        }
+        Product old = view(row);
+        BYTES.setRelease(ratings, row, (byte) product.getRating().ordinal());
+        return old;
+    }
+
+    @Override
+    public void add(Product product, List<Review> reviewList, RatingSummary summary) {
+        if (size == ids.length) {
+            grow(size << 1);
+        }
+        int row = size;
+        ids[row] = product.getId();
+        BigDecimal price = product.getPrice();
+        if (price.unscaledValue().bitLength() < 64 && price.scale() >= Byte.MIN_VALUE && price.scale() <= Byte.MAX_VALUE) {
+            priceUnits[row] = price.unscaledValue().longValue();
+            priceScales[row] = (byte) price.scale();
+        } else {
+            largePrices.put(product.getId(), price);
+        }
+        ratings[row] = (byte) product.getRating().ordinal();
+        summary.copyTo(histograms, row * RatingSummary.SIZE);
+        reviews[row] = reviewList;
+        if (product instanceof Food) {
+            types[row] = FOOD;
+            bestBefore[row] = (int) product.getBestBefore().toEpochDay();
+        } else {
+            types[row] = DRINK;
+        }
+        byte[] name = product.getName().getBytes(StandardCharsets.UTF_8);
+        if (namesLength + name.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length << 1, namesLength + name.length));
+        }
+        System.arraycopy(name, 0, names, namesLength, name.length);
+        nameOffsets[row] = namesLength;
+        namesLength += name.length;
+        nameOffsets[row + 1] = namesLength;
+        size++;
+        index(product.getId(), row);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Review> getReviews(int id) {
+        int row = rowOf(id);
+        return row < 0 ? null : (List<Review>) reviews[row];
+    }
+
+    @Override
+    public RatingSummary getRatings(int id) {
+        int row = rowOf(id);
+        return row < 0 ? null : new RatingSummary(histograms, row * RatingSummary.SIZE);
+    }
+
+    @Override
+    public List<Product> values() {
+        List<Product> result = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            result.add(view(row));
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        allocate(DEFAULT_CAPACITY);
+        largePrices.clear();
+        size = 0;
+        namesLength = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private Product view(int row) {
+        int id = ids[row];
+        String name = new String(names, nameOffsets[row], nameOffsets[row + 1] - nameOffsets[row], StandardCharsets.UTF_8);
+        BigDecimal price = largePrices.isEmpty() ? null : largePrices.get(id);
+        if (price == null) {
+            price = BigDecimal.valueOf(priceUnits[row], priceScales[row]);
+        }
+        Rating rating = Rateable.convert((byte) BYTES.getAcquire(ratings, row));
+        return types[row] == FOOD
+                ? new Food(id, name, price, rating, LocalDate.ofEpochDay(bestBefore[row]))
+                : new Drink(id, name, price, rating);
+    }
+
+    private int rowOf(int id) {
+        int slot = mix(id) & mask;
+        int row;
+        while ((row = slotRows[slot]) != 0) {
+            if (slotIds[slot] == id) {
+                return row - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void index(int id, int row) {
+        int slot = mix(id) & mask;
+        while (slotRows[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slotIds[slot] = id;
+        slotRows[slot] = row + 1;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        priceUnits = Arrays.copyOf(priceUnits, capacity);
+        priceScales = Arrays.copyOf(priceScales, capacity);
+        ratings = Arrays.copyOf(ratings, capacity);
+        histograms = Arrays.copyOf(histograms, capacity * RatingSummary.SIZE);
+        reviews = Arrays.copyOf(reviews, capacity);
+        types = Arrays.copyOf(types, capacity);
+        bestBefore = Arrays.copyOf(bestBefore, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+        slotIds = new int[capacity * 2];
+        slotRows = new int[capacity * 2];
+        mask = capacity * 2 - 1;
+        for (int row = 0; row < size; row++) {
+            index(ids[row], row);
+        }
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        priceUnits = new long[capacity];
+        priceScales = new byte[capacity];
+        ratings = new byte[capacity];
+        histograms = new int[capacity * RatingSummary.SIZE];
+        reviews = new Object[capacity];
+        types = new byte[capacity];
+        bestBefore = new int[capacity];
+        nameOffsets = new int[capacity + 1];
+        names = new byte[capacity * 16];
+        slotIds = new int[capacity * 2];
+        slotRows = new int[capacity * 2];
+        mask = capacity * 2 - 1;
+    }
+
+    /**
+     * spreads sequential ids over the table
+     */
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
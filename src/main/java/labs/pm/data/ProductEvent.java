@@ -0,0 +1,74 @@
+package labs.pm.data;
+
+/**
+ * {@code ProductEvent} is change of catalog published by {@link ProductManager#getEvents()}
+ * @author mserge
+ * @version 1
+ */
+public class ProductEvent {
+    public enum Type {
+        /**
+         * product was added to catalog
+         */
+        CREATED,
+        /**
+         * review was added to product, rating of product is not changed yet
+         */
+        REVIEWED,
+        /**
+         * rating of product changed after its reviews were added
+         */
+        RERATED
+    }
+
+    private final Type type;
+    private final Product product;
+    private final Review review;
+    private final Rating previousRating;
+
+    ProductEvent(Type type, Product product, Review review, Rating previousRating) {
+        this.type = type;
+        this.product = product;
+        this.review = review;
+        this.previousRating = previousRating;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return product as it is after the change
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    public int getProductId() {
+        return product.getId();
+    }
+
+    /**
+     * @return added review of {@link Type#REVIEWED} event, {@code null} for other events
+     */
+    public Review getReview() {
+        return review;
+    }
+
+    /**
+     * @return rating before {@link Type#RERATED} event, {@code null} for other events
+     */
+    public Rating getPreviousRating() {
+        return previousRating;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductEvent{" +
+                "type=" + type +
+                ", productId=" + product.getId() +
+                ", review=" + review +
+                ", previousRating=" + previousRating +
+                '}';
+    }
+}
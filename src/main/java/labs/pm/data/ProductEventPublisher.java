@@ -0,0 +1,310 @@
+package labs.pm.data;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code ProductEventPublisher} publishes {@link ProductEvent}s to {@link Flow.Subscriber}s.
+ * <p>
+ * Writers only offer event to bounded non-blocking queue, and only when there are subscribers, they never wait
+ * nor take a lock: event which does not fit into the queue is dropped. Dispatcher thread moves queued events
+ * into bounded buffer of each subscriber without waiting for any of them. Event for subscriber whose buffer
+ * is full is handled according to {@link Overflow}, so slow subscriber loses only its own events.
+ * Each subscriber receives its events on delivery pool as it requests them, one signal at a time.
+ * <p>
+ * Events of one product are offered under the lock of the product, so they are received in order of changes.
+ * @author mserge
+ * @version 1
+ */
+class ProductEventPublisher implements Flow.Publisher<ProductEvent>, AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ProductEventPublisher.class.getName());
+
+    /**
+     * what happens to event for subscriber whose buffer is full
+     */
+    enum Overflow {
+        /**
+         * the oldest buffered event is dropped
+         */
+        DROP_OLDEST,
+        /**
+         * the new event is dropped
+         */
+        DROP_LATEST,
+        /**
+         * subscription is cancelled and subscriber receives {@code onError} with {@link IllegalStateException}
+         */
+        CANCEL
+    }
+
+    private final Queue<ProductEvent> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * number of queued events, slot is taken before event is queued
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int queueSize;
+    private final int bufferSize;
+    private final Overflow overflow;
+    private final Runnable dropped;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService delivery;
+    private final Thread dispatcher;
+    /**
+     * dispatcher is parked or about to park, writers which queue an event unpark it
+     */
+    private volatile boolean parked;
+    private volatile boolean closed;
+
+    /**
+     * @param queueSize number of events waiting for dispatcher before new events are dropped
+     * @param bufferSize number of events waiting for each subscriber
+     * @param dropped called for each dropped event
+     */
+    ProductEventPublisher(int queueSize, int bufferSize, Overflow overflow, Runnable dropped) {
+        this.queueSize = Math.max(1, queueSize);
+        this.bufferSize = Math.max(1, bufferSize);
+        this.overflow = overflow;
+        this.dropped = dropped;
+        delivery = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "event-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = new Thread(this::dispatchLoop, "event-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ProductEvent> subscriber) {
+        Subscription subscription = new Subscription(Objects.requireNonNull(subscriber));
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscriptions.remove(subscription);
+            subscription.complete();
+        }
+    }
+
+    void created(Product product) {
+        if (!subscriptions.isEmpty()) {
+            offer(new ProductEvent(ProductEvent.Type.CREATED, product, null, null));
+        }
+    }
+
+    void reviewed(Product product, Review review) {
+        if (!subscriptions.isEmpty()) {
+            offer(new ProductEvent(ProductEvent.Type.REVIEWED, product, review, null));
+        }
+    }
+
+    void rerated(Product oldProduct, Product newProduct) {
+        if (!subscriptions.isEmpty()) {
+            offer(new ProductEvent(ProductEvent.Type.RERATED, newProduct, null, oldProduct.getRating()));
+        }
+    }
+
+    /**
+     * Dispatches queued events, then completes all subscriptions after their buffered events
+     * and stops dispatcher thread
+     */
+    @Override
+    public void close() {
+        try {
+            closed = true;
+            LockSupport.unpark(dispatcher);
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void offer(ProductEvent event) {
+        if (queued.incrementAndGet() > queueSize) {
+            queued.decrementAndGet();
+            dropped.run();
+            return;
+        }
+        queue.offer(event);
+        wakeDispatcher();
+    }
+
+    private void wakeDispatcher() {
+        if (parked) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * After close, events queued before it are dispatched and subscriptions are completed after their buffered events
+     */
+    private void dispatchLoop() {
+        while (true) {
+            ProductEvent event;
+            while ((event = queue.poll()) != null) {
+                queued.decrementAndGet();
+                for (Subscription subscription : subscriptions) {
+                    subscription.offer(event);
+                }
+            }
+            if (closed && queue.isEmpty()) {
+                for (Subscription subscription : subscriptions) {
+                    subscription.complete();
+                }
+                subscriptions.clear();
+                return;
+            }
+            parked = true;
+            if (queue.isEmpty() && !closed) {
+                LockSupport.park(this);
+            }
+            parked = false;
+        }
+    }
+
+    /**
+     * Buffer and demand of one subscriber. Signals are sent by one delivery task at a time,
+     * task is scheduled when events arrive or are requested.
+     */
+    private class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ProductEvent> subscriber;
+        private final ArrayDeque<ProductEvent> buffer = new ArrayDeque<>();
+        private final AtomicInteger scheduled = new AtomicInteger();
+        private long demand;
+        private boolean completed;
+        private Throwable error;
+        private boolean done;
+
+        private Subscription(Flow.Subscriber<? super ProductEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Requested " + n + " events, request must be positive");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                done = true;
+                buffer.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        /**
+         * buffers event, full buffer is handled according to {@link Overflow}, dispatcher never waits here
+         */
+        private void offer(ProductEvent event) {
+            synchronized (this) {
+                if (done || error != null || completed) {
+                    return;
+                }
+                if (buffer.size() == bufferSize) {
+                    dropped.run();
+                    switch (overflow) {
+                        case DROP_OLDEST:
+                            buffer.poll();
+                            break;
+                        case DROP_LATEST:
+                            return;
+                        case CANCEL:
+                            error = new IllegalStateException("Subscriber fell behind by more than " + bufferSize + " events");
+                            buffer.clear();
+                            break;
+                    }
+                }
+                if (error == null) {
+                    buffer.add(event);
+                }
+            }
+            schedule();
+        }
+
+        private void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.getAndIncrement() == 0) {
+                delivery.execute(this::deliver);
+            }
+        }
+
+        /**
+         * sends requested events, then error or completion, until no more work was scheduled meanwhile
+         */
+        private void deliver() {
+            int missed = 1;
+            do {
+                while (true) {
+                    ProductEvent event = null;
+                    Throwable failure = null;
+                    boolean complete = false;
+                    synchronized (this) {
+                        if (done) {
+                            return;
+                        }
+                        if (error != null) {
+                            failure = error;
+                            done = true;
+                        } else if (demand > 0 && !buffer.isEmpty()) {
+                            event = buffer.poll();
+                            if (demand != Long.MAX_VALUE) {
+                                demand--;
+                            }
+                        } else if (completed && buffer.isEmpty()) {
+                            complete = true;
+                            done = true;
+                        } else {
+                            break;
+                        }
+                    }
+                    try {
+                        if (failure != null) {
+                            subscriptions.remove(this);
+                            subscriber.onError(failure);
+                            return;
+                        }
+                        if (complete) {
+                            subscriptions.remove(this);
+                            subscriber.onComplete();
+                            return;
+                        }
+                        subscriber.onNext(event);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Subscriber failed, it is unsubscribed " + e.getMessage(), e);
+                        cancel();
+                        return;
+                    }
+                }
+                missed = scheduled.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
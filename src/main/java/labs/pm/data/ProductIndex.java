@@ -0,0 +1,55 @@
+package labs.pm.data;
+
+import java.util.List;
+
+/**
+ * {@code ProductIndex} is primary index of current products by id,
+ * it also holds reviews of each product and their rating aggregates.
+ * Adding new ids needs exclusive access, replacing product of existing id
+ * is visible to concurrent readers without locking.
+ * Reviews and rating aggregates are changed and read under the lock of the product stripe.
+ * @author mserge
+ * @version 1
+ */
+interface ProductIndex {
+    /**
+     * @param id product id
+     * @return current product with given id or {@code null}
+     */
+    Product get(int id);
+
+    /**
+     * Replaces previous product with the same id, only rating of the product changes
+     * @param product product with new rating
+     * @return previous product with the same id or {@code null} when id is not indexed
+     */
+    Product put(Product product);
+
+    /**
+     * Adds product which is not indexed yet
+     * @param reviews list of reviews of the product, kept by the index and extended by caller
+     * @param ratings rating aggregates of the reviews
+     */
+    void add(Product product, List<Review> reviews, RatingSummary ratings);
+
+    /**
+     * @param id product id
+     * @return reviews of the product or {@code null} when id is not indexed
+     */
+    List<Review> getReviews(int id);
+
+    /**
+     * @param id product id
+     * @return rating aggregates of the product, which are changed in place, or {@code null} when id is not indexed
+     */
+    RatingSummary getRatings(int id);
+
+    /**
+     * @return snapshot of current products
+     */
+    List<Product> values();
+
+    void clear();
+
+    int size();
+}
@@ -1,10 +1,16 @@
 package labs.pm.data;
 
+import labs.pm.data.ProductManagerMetrics.Operation;
+
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
 import java.text.NumberFormat;
@@ -12,9 +18,15 @@ import java.text.ParseException;
 import java.time.DateTimeException;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.FormatStyle;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
@@ -22,200 +34,908 @@ import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-public class ProductManager {
+public class ProductManager implements AutoCloseable {
     public static final Logger logger = Logger.getLogger(ProductManager.class.getName());
-    private Map<Product, List<Review>> products = new HashMap<>();
+    /**
+     * comments of reviews when {@code reviews.store} is {@code arena}, {@code null} when reviews are kept as objects,
+     * replaced together with reviews of {@link #index}
+     */
+    private ReviewArena reviewArena;
+    private final boolean reviewsInArena;
+    /**
+     * reviews read from review files when {@code reviews.lazy} is {@code true}, {@code null} when reviews are loaded eagerly
+     */
+    private final ReviewCache reviewCache;
+    /**
+     * current products with their reviews and running rating aggregates,
+     * objects or primitive columns according to {@code catalog.store}
+     */
+    private final ProductIndex index;
+    private final DiscountTotals discounts = new DiscountTotals();
+    private final ProductQueryEngine queries;
+    /**
+     * products ordered by rating and number of reviews, moved on each review
+     */
+    private final Leaderboard leaderboard = new Leaderboard();
+    /**
+     * shared by all shards, so operations and locks of shards are recorded together
+     */
+    private final ProductManagerMetrics metrics;
+    /**
+     * catalog lock, write lock is taken only to add products or to replace whole catalog,
+     * operations on existing products take read lock and lock of the product stripe.
+     * Listings, discounts and reports read published snapshot of the catalog instead,
+     * they take read lock only when catalog is not indexed.
+     */
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Lock readLock = lock.readLock();
-    private final Lock writeLock = lock.writeLock();
-    private final ResourceBundle config = ResourceBundle.getBundle("config");
-    private final MessageFormat productFormat = new MessageFormat(config.getString("product.data.format"));
-    private final MessageFormat reviewFormat = new MessageFormat(config.getString("review.data.format"));
-    private final Path reportsFolder=Path.of(config.getString("reports.folder"));
-    private final Path dataFolder=Path.of(config.getString("data.folder"));
-    private final Path tempFolder=Path.of(config.getString("temp.folder"));
-
-    private static final Map<String, ResourceFormatter> formatters =
-            Map.of(
-                    "en-GB", new ResourceFormatter(Locale.UK),
-                    "ru-RU", new ResourceFormatter(new Locale("ru", "RU")),
-                    "fr-FR", new ResourceFormatter(Locale.FRANCE)
-            );
-    private static final ProductManager pm = new ProductManager();
-    private ProductManager() {
-        loadAllData();
+    private final Lock readLock;
+    private final Lock writeLock;
+    private final StripedLock productLocks;
+    /**
+     * Partitions of catalog when {@code catalog.shards} is more than 1, {@code null} when this manager holds catalog.
+     * Products are spread over shards by hash of id, each shard has its own catalog, locks, journal, snapshots
+     * and subfolder {@code shard.folder} of data, temp and journal folders.
+     * Operations on one product go to its shard, listings and discounts are gathered from all shards in parallel.
+     */
+    private final ProductManager[] shards;
+    private final ExecutorService gatherPool;
+    private final ResourceBundle config;
+    private final DataParser parser;
+    private final Path reportsFolder;
+    private final Path dataFolder;
+    private final Path tempFolder;
+    private final int loadThreads;
+    private final long loadMapThreshold;
+    private final boolean loadSnapshot;
+    private final Path journalFolder;
+    private final int listingChunkSize;
+    private final int bulkBatchSize;
+    private final ReportCache reportCache;
+    private final ReportWriter reportWriter;
+    /**
+     * shared by all shards, so subscribers receive events of whole catalog
+     */
+    private final ProductEventPublisher events;
+    /**
+     * write ahead log of creations and reviews, {@code null} while journal is replayed or when it is disabled
+     */
+    private CatalogJournal journal;
+    /**
+     * applies new product files and lines appended to review files when {@code data.watch} is {@code true}
+     */
+    private DataWatcher dataWatcher;
+    /**
+     * lengths of review files read when catalog was loaded, data watcher reads lines appended after them,
+     * {@code null} when data files are not watched or watcher has started
+     */
+    private Map<Path, Long> reviewFileLengths;
+    /**
+     * closes the manager on JVM shutdown, {@code null} for shards, they are closed by their router
+     */
+    private final Thread shutdownHook;
+    private boolean closed;
+
+    /**
+     * standard output of print methods, shared so each call does not create its own buffer,
+     * replaced when {@link System#setOut} changes the stream
+     */
+    private static PrintStream stdoutStream;
+    private static Writer stdout;
+    private static final Set<String> preloadedLocales = Set.of("en-GB", "ru-RU", "fr-FR");
+    private static final Set<Locale> availableLocales = Set.of(NumberFormat.getAvailableLocales());
+    /**
+     * formatters by language tag, locales other than preloaded are loaded on first use
+     */
+    private static final Map<String, ResourceFormatter> formatters = new ConcurrentHashMap<>();
+
+    static {
+        preloadedLocales.forEach(ProductManager::formatter);
+    }
+
+    private ProductManager(ResourceBundle config) {
+        this(config, null, -1);
+    }
+
+    /**
+     * @param router manager routing to this shard, its metrics and report writer are shared,
+     *               {@code null} when this manager is not a shard
+     * @param shard number of this shard, -1 when this manager is not a shard
+     */
+    private ProductManager(ResourceBundle config, ProductManager router, int shard) {
+        this.config = config;
+        metrics = router == null ? new ProductManagerMetrics(Integer.parseInt(config.getString("metrics.lock.sample"))) : router.metrics;
+        readLock = metrics.timed(lock.readLock(), "catalog.read");
+        writeLock = metrics.timed(lock.writeLock(), "catalog.write");
+        productLocks = new StripedLock(Runtime.getRuntime().availableProcessors() * 4,
+                productLock -> metrics.timed(productLock, "product.read"),
+                productLock -> metrics.timed(productLock, "product.write"));
+        int shardCount = Math.max(1, Integer.parseInt(config.getString("catalog.shards")));
+        String shardFolder = shard < 0 ? "" : MessageFormat.format(config.getString("shard.folder"), shard);
+        boolean columns = config.getString("catalog.store").equals("columns");
+        index = columns ? new ProductColumns() : new ProductTable();
+        reviewsInArena = config.getString("reviews.store").equals("arena");
+        reviewArena = newReviewArena();
+        reviewCache = Boolean.parseBoolean(config.getString("reviews.lazy"))
+                ? new ReviewCache(Long.parseLong(config.getString("reviews.cache.size")) / (shard < 0 ? 1 : shardCount))
+                : null;
+        boolean queryIndexes = Boolean.parseBoolean(config.getString("query.indexes"));
+        if (columns && queryIndexes && router == null) {
+            logger.log(Level.WARNING, "Query indexes hold product objects, they are disabled for catalog.store=columns");
+        }
+        queries = new ProductQueryEngine(queryIndexes && !columns);
+        parser = new DataParser(config.getString("product.data.format"), config.getString("review.data.format"));
+        reportsFolder = Path.of(config.getString("reports.folder"));
+        dataFolder = Path.of(config.getString("data.folder")).resolve(shardFolder);
+        tempFolder = Path.of(config.getString("temp.folder")).resolve(shardFolder);
+        loadThreads = Integer.parseInt(config.getString("load.threads"));
+        loadMapThreshold = Long.parseLong(config.getString("load.map.threshold"));
+        loadSnapshot = Boolean.parseBoolean(config.getString("load.snapshot"));
+        journalFolder = Path.of(config.getString("journal.folder")).resolve(shardFolder);
+        listingChunkSize = Math.max(1, Integer.parseInt(config.getString("listing.chunk.size")));
+        bulkBatchSize = Math.max(1, Integer.parseInt(config.getString("review.bulk.batch.size")));
+        reportCache = new ReportCache(Long.parseLong(config.getString("report.cache.bytes")) / (shard < 0 ? 1 : shardCount));
+        boolean partition = router == null && checkShardCount(shardCount);
+        if (router == null) {
+            reportWriter = new ReportWriter(Integer.parseInt(config.getString("report.queue.size")),
+                    Integer.parseInt(config.getString("report.batch.size")));
+            events = new ProductEventPublisher(Integer.parseInt(config.getString("events.queue.size")),
+                    Integer.parseInt(config.getString("events.buffer.size")),
+                    ProductEventPublisher.Overflow.valueOf(config.getString("events.overflow").toUpperCase()),
+                    metrics::eventDropped);
+            shutdownHook = new Thread(this::close, "product-manager-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } else {
+            reportWriter = router.reportWriter;
+            events = router.events;
+            shutdownHook = null;
+        }
+        if (shard < 0 && shardCount > 1) {
+            if (partition) {
+                partitionData(shardCount);
+            }
+            shards = new ProductManager[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new ProductManager(config, this, i);
+            }
+            gatherPool = Executors.newFixedThreadPool(shardCount, task -> {
+                Thread thread = new Thread(task, "shard-gather");
+                thread.setDaemon(true);
+                return thread;
+            });
+            return;
+        }
+        shards = null;
+        gatherPool = null;
+        if (Boolean.parseBoolean(config.getString("data.watch"))) {
+            reviewFileLengths = new ConcurrentHashMap<>();
+        }
+        long snapshotStamp = loadSnapshot ? loadLatestSnapshot() : -1;
+        if (snapshotStamp < 0) {
+            loadAllData();
+        }
+        if (Boolean.parseBoolean(config.getString("journal.enabled"))) {
+            openJournal(replayJournal(Math.max(snapshotStamp, 0)));
+        }
+        if (Boolean.parseBoolean(config.getString("data.watch"))) {
+            watchData();
+        }
+    }
+
+    /**
+     * instance is created on first use by holder class, data is loaded by pool threads
+     * which must not wait for initialization of {@code ProductManager} class itself
+     */
+    private static class Holder {
+        private static final ProductManager pm = new ProductManager(ResourceBundle.getBundle("config"));
+
+        static {
+            pm.metrics.register(pm.config.getString("metrics.jmx.name"));
+        }
     }
 
     public static ProductManager getInstance(){
-        return pm;
+        return Holder.pm;
     }
 
+    /**
+     * Creates separate manager, not the shared instance, with some of {@code config} settings replaced,
+     * for example with {@code data.folder} in temporary folder for benchmarks
+     * @param settings config keys and values to use instead of values from {@code config.properties}
+     * @return new manager loaded according to the settings
+     */
+    public static ProductManager newInstance(Map<String, String> settings) {
+        ResourceBundle base = ResourceBundle.getBundle("config");
+        return new ProductManager(new ResourceBundle() {
+            {
+                setParent(base);
+            }
+
+            @Override
+            protected Object handleGetObject(String key) {
+                return settings.get(key);
+            }
+
+            @Override
+            public Enumeration<String> getKeys() {
+                Set<String> keys = new HashSet<>(settings.keySet());
+                keys.addAll(base.keySet());
+                return Collections.enumeration(keys);
+            }
+        });
+    }
+
+    /**
+     * Stops watching data files, writes queued journal events and reports, completes subscribers of events
+     * and stops threads of this manager and its shards. Called on JVM shutdown for managers not closed before,
+     * managers created by {@link #newInstance(Map)} should be closed when they are no longer used.
+     * Manager must not be used after it is closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (dataWatcher != null) {
+            dataWatcher.close();
+        }
+        if (shards != null) {
+            for (ProductManager shard : shards) {
+                shard.close();
+            }
+            gatherPool.shutdown();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (shutdownHook != null) {
+            reportWriter.close();
+            events.close();
+            if (Thread.currentThread() != shutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException e) {
+                    // JVM is shutting down, the hook finds manager closed
+                }
+            }
+        }
+    }
+
+    /**
+     * @return operation, lock and parse metrics, also registered as MBean {@code metrics.jmx.name}
+     * for the shared instance
+     */
+    public ProductManagerMetricsMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publishes creations of products, their reviews and changes of their ratings, including changes
+     * read from data files and bulk reviews, but not catalog replaced by {@link #restoreData()}.
+     * Events of one product are received in order of changes.
+     * <p>
+     * Writers do not wait for subscribers: each subscriber has buffer of {@code events.buffer.size} events,
+     * when it is full event is handled according to {@code events.overflow}: {@code drop_oldest},
+     * {@code drop_latest} or {@code cancel} subscription with {@link IllegalStateException},
+     * other subscribers keep receiving events meanwhile. Events which do not fit into dispatcher queue
+     * of {@code events.queue.size} are dropped for all subscribers.
+     * Dropped events are counted by {@link ProductManagerMetricsMXBean#getDroppedEvents()}.
+     * @return publisher of product events
+     */
+    public Flow.Publisher<ProductEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * @return language tags of locales loaded at start, other locales are loaded on first use,
+     * see {@link #isSupportedLocale(String)}
+     */
     public static Set<String> getSupportedLocales() {
-        return formatters.keySet();
+        return preloadedLocales;
+    }
+
+    /**
+     * @return {@code true} when products may be formatted for the language tag,
+     * other tags are formatted for {@code en-GB}
+     */
+    public static boolean isSupportedLocale(String languageTag) {
+        return languageTag != null && (formatters.containsKey(languageTag)
+                || availableLocales.contains(Locale.forLanguageTag(languageTag))
+                && Locale.forLanguageTag(languageTag).toLanguageTag().equals(languageTag));
+    }
+
+    /**
+     * @return language tag used for the requested one
+     */
+    private static String supportedLocale(String languageTag) {
+        return isSupportedLocale(languageTag) ? languageTag : "en-GB";
     }
 
-    private static class ResourceFormatter {
+    private static ResourceFormatter formatter(String languageTag) {
+        return formatters.computeIfAbsent(supportedLocale(languageTag), tag -> new ResourceFormatter(Locale.forLanguageTag(tag)));
+    }
 
-        private Locale locale;
-        private ResourceBundle resourceBundle;
-        private DateTimeFormatter dateTimeFormatter;
-        private NumberFormat numberFormat;
+    /**
+     * renders report of product and its reviews copied by {@link #snapshotReviews}, no lock is needed
+     * @return UTF-8 report body
+     */
+    private static byte[] renderReport(Product product, List<Review> productReviews, String languageTag) {
+        ResourceFormatter formatter = formatter(languageTag);
+        StringBuilder txt = new StringBuilder(256);
+        formatter.appendProduct(txt, product);
+        txt.append(System.lineSeparator());
+        List<Review> reviews = productReviews.stream().sorted().collect(Collectors.toList());
+       // Collections.sort(reviews); // FIXED: This is modification of shared review!!!
 
-        public ResourceFormatter(Locale locale) {
-            this.locale = locale;
-            resourceBundle = ResourceBundle.getBundle("resources", locale);
-            dateTimeFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
-            numberFormat = NumberFormat.getCurrencyInstance(locale);
+        if (reviews.isEmpty()) {
+            txt.append(formatter.getText("no.reviews"));
+            txt.append(System.lineSeparator());
+        } else {
+            for (int i = 0; i < reviews.size(); i++) {
+                if (i > 0) {
+                    txt.append(System.lineSeparator());
+                }
+                formatter.appendReview(txt, reviews.get(i));
+            }
         }
+        return txt.toString().getBytes(StandardCharsets.UTF_8);
+    }
 
+    /**
+     * reviews are only appended, so copy keeps reviews the product has now,
+     * caller holds lock of the product stripe
+     * @return copy which may be read without lock
+     */
+    private static List<Review> snapshotReviews(List<Review> reviews) {
+        if (reviews instanceof ReviewList) {
+            return ((ReviewList) reviews).copy();
+        }
+        if (reviews instanceof LazyReviewList) {
+            return ((LazyReviewList) reviews).copy();
+        }
+        return new ArrayList<>(reviews);
+    }
 
-        private String getText(String s) {
-            return resourceBundle.getString(s);
+    /**
+     * @return number of reports served from cache
+     */
+    public long getReportCacheHits() {
+        if (shards != null) {
+            return Arrays.stream(shards).mapToLong(ProductManager::getReportCacheHits).sum();
         }
+        return reportCache.getHits();
+    }
 
-        private String formatReview(Review review) {
-            return MessageFormat.format(
-                    getText("review"),
-                    review.getRating().getStars(),
-                    review.getComments()
-            );
+    /**
+     * @return number of reports rendered because cached report was missing or outdated
+     */
+    public long getReportCacheMisses() {
+        if (shards != null) {
+            return Arrays.stream(shards).mapToLong(ProductManager::getReportCacheMisses).sum();
         }
+        return reportCache.getMisses();
+    }
 
-        private String formatProduct(Product product) {
-            return MessageFormat.format(
-                    getText("product"),
-                    product.getName(),
-                    numberFormat.format(product.getPrice()),
-                    product.getRating().getStars(),
-                    dateTimeFormatter.format(product.getBestBefore())
-            );
+    /**
+     * Renders report and writes it to {@code reports.folder}, returns when the file is written
+     */
+    public void printProductReport(int id, String languageTag, String client) {
+        long start = System.nanoTime();
+        try {
+            submitProductReport(id, languageTag, client).join();
+        } catch (CompletionException e) {
+            metrics.failed(Operation.PRINT_PRODUCT_REPORT);
+            if (e.getCause() instanceof ProductManagerException) {
+                logger.log(Level.INFO, "Cannot find product" + e.getCause().getMessage());
+            } else {
+                logger.log(Level.SEVERE, "Error printing product" + e.getCause().getMessage(), e.getCause());
+            }
+        } finally {
+            metrics.record(Operation.PRINT_PRODUCT_REPORT, start);
         }
     }
 
-    private void printProductReport(Product product, String languageTag, String client) throws IOException {
-        ResourceFormatter formatter= formatters.getOrDefault(languageTag, formatters.get("en-GB"));
+    /**
+     * Takes product and copy of its reviews under the lock of the product stripe, renders report
+     * after the lock is released and queues it for report writer thread, blocks while writer queue is full.
+     * Product is taken from snapshot of the catalog, catalog read lock is taken only when catalog is not indexed.
+     * <p>
+     * Reports are cached by product id and language, review count is version of the product.
+     * Drinks are best before today, so report is rendered again on the next day.
+     * @return completed with report file when it is written, or exceptionally when product is not found
+     * or report or review file cannot be read or written
+     */
+    public CompletableFuture<Path> submitProductReport(int id, String languageTag, String client) {
+        if (shards != null) {
+            return shardOf(id).submitProductReport(id, languageTag, client);
+        }
+        long start = System.nanoTime();
+        Lock productLock = productLocks.readLock(id);
+        boolean locked = queries.snapshot() == null;
+        String tag = supportedLocale(languageTag);
+        long day = LocalDate.now().toEpochDay();
+        Path productFile;
+        Product product;
+        long version;
+        List<Review> reviews = null;
+        byte[] report;
+        try {
+            if (locked) {
+                readLock.lock();
+            }
+            productLock.lock();
+            product = locked ? lookupProduct(id) : snapshotProduct(id);
+            productFile = reportsFolder.resolve(MessageFormat.format(config.getString("report.file"), product.getId(), client));
+            version = index.getRatings(id).getCount();
+            report = reportCache.get(id, tag, version, day);
+            if (report == null) {
+                reviews = snapshotReviews(index.getReviews(id));
+            }
+        } catch (ProductManagerException e) {
+            metrics.failed(Operation.SUBMIT_PRODUCT_REPORT);
+            metrics.record(Operation.SUBMIT_PRODUCT_REPORT, start);
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            productLock.unlock();
+            if (locked) {
+                readLock.unlock();
+            }
+        }
+        if (report == null) {
+            try {
+                report = renderReport(product, reviews, tag);
+            } catch (UncheckedIOException e) {
+                metrics.failed(Operation.SUBMIT_PRODUCT_REPORT);
+                metrics.record(Operation.SUBMIT_PRODUCT_REPORT, start);
+                return CompletableFuture.failedFuture(e);
+            }
+            reportCache.put(id, tag, version, day, report);
+        }
+        try {
+            return reportWriter.submit(productFile, report);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.failed(Operation.SUBMIT_PRODUCT_REPORT);
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            metrics.record(Operation.SUBMIT_PRODUCT_REPORT, start);
+        }
+    }
 
-        // StringBuilder txt = new StringBuilder();
-        Path productFile = reportsFolder.resolve(MessageFormat.format(config.getString("report.file"), product.getId(), client));
+    public void printProducts(Comparator<Product> sorter,String languageTag ) {
+        printProducts(t -> true, sorter, languageTag);
+    }
 
-        try (PrintWriter txt = new PrintWriter(
-                new OutputStreamWriter(Files.newOutputStream(productFile, StandardOpenOption.CREATE),StandardCharsets.UTF_8),
-                true) ){
-            txt.append(formatter.formatProduct(product));
-            txt.append(System.lineSeparator());
-            List<Review> reviews = products.get(product).stream().sorted().collect(Collectors.toList());
-           // Collections.sort(reviews); // FIXED: This is modification of shared review!!!
+    public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag) {
+        printProducts(new ProductQuery().filter(filter).sortedBy(sorter), languageTag);
+    }
 
-            if (reviews.isEmpty()) {
-                txt.append(formatter.getText("no.reviews"));
-                txt.append(System.lineSeparator());
-            } else {
-                String reviewtxt = reviews.stream().
-                        map(r -> formatter.formatReview(r))
-                        .collect(Collectors.joining(System.lineSeparator()));
-                txt.append(reviewtxt);
+    /**
+     * Prints products selected by the query to standard output as they are read, see {@link #writeProducts(ProductQuery, String, Writer)}
+     */
+    public void printProducts(ProductQuery query, String languageTag) {
+        long start = System.nanoTime();
+        try {
+            Writer out = stdout();
+            synchronized (out) {
+                writeListing(query, languageTag, out);
+                out.flush();
             }
+        } catch (IOException e) {
+            metrics.failed(Operation.PRINT_PRODUCTS);
+            logger.log(Level.SEVERE, "Error printing products " + e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.PRINT_PRODUCTS, start);
         }
     }
 
-    private void print(StringBuilder txt) {
-        PrintWriter printWriter = new PrintWriter(
-                new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
-                true);
-        printWriter.println(txt);
+    /**
+     * Writes products selected by the query to the writer one row at a time.
+     * Query without order is listed by id. Query ordered by index is read in chunks of {@code listing.chunk.size}
+     * products, each chunk starts in the index after the previous one, so memory use does not depend on catalog size.
+     * Query sorted by comparator, and any query of catalog not indexed, is selected and sorted once,
+     * so listing costs one pass over matching products whatever the chunk size.
+     * All chunks are read from the same snapshot of the catalog without lock, so listing shows catalog
+     * as it was when listing started and slow writer does not delay changes. Catalog not indexed is locked
+     * only while products are selected.
+     * @param out writer to write to, for channel use {@link java.nio.channels.Channels#newWriter}
+     */
+    public void writeProducts(ProductQuery query, String languageTag, Writer out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            writeListing(query, languageTag, out);
+        } catch (IOException e) {
+            metrics.failed(Operation.WRITE_PRODUCTS);
+            throw e;
+        } finally {
+            metrics.record(Operation.WRITE_PRODUCTS, start);
+        }
     }
 
-    public void printProductReport(int id, String languageTag, String client) {
+    /**
+     * Writes one page of products selected by the query, offset and limit of the query are replaced by the page.
+     * Query without order is listed by id.
+     * Pages of query ordered by price, rating or best before date start in the index after the last product
+     * of previous page, so reading any page costs about the same.
+     * @param pageToken token returned for previous page, {@code null} for the first page
+     * @param pageSize maximal number of products in the page
+     * @return token of the next page or {@code null} when this page is the last one
+     * @throws IllegalArgumentException when token was not returned for the same query
+     */
+    public String writeProducts(ProductQuery query, String languageTag, String pageToken, int pageSize, Writer out)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            ProductQuery page = query.copy().offset(0).limit(pageSize);
+            if (page.order == null && page.sorter == null) {
+                page.orderBy(ProductQuery.Order.ID);
+            }
+            if (pageToken != null) {
+                page.startAt(pageToken);
+            }
+            List<Product> products = findPage(page);
+            writeRows(products, languageTag, out);
+            return products.size() < pageSize || products.isEmpty() ? null
+                    : page.pageToken(products.get(products.size() - 1), page.offset + products.size());
+        } catch (IOException | RuntimeException e) {
+            metrics.failed(Operation.WRITE_PRODUCTS);
+            throw e;
+        } finally {
+            metrics.record(Operation.WRITE_PRODUCTS, start);
+        }
+    }
+
+    private void writeListing(ProductQuery query, String languageTag, Writer out) throws IOException {
+        Map<ProductManager, ProductQueryEngine.Snapshot> snapshots = snapshots();
+        ProductQuery chunk = query.copy();
+        if (chunk.order == null && chunk.sorter == null) {
+            chunk.orderBy(ProductQuery.Order.ID);
+        }
+        if (!chunk.isKeyset() || snapshots.containsValue(null)) {
+            writeRows(findPage(chunk, snapshots), languageTag, out);
+            return;
+        }
+        int remaining = query.limit;
+        while (remaining > 0) {
+            chunk.limit(Math.min(listingChunkSize, remaining));
+            List<Product> products = findPage(chunk, snapshots);
+            writeRows(products, languageTag, out);
+            remaining -= products.size();
+            if (products.size() < chunk.limit) {
+                break;
+            }
+            chunk.after(products.get(products.size() - 1));
+        }
+    }
+
+    private List<Product> findPage(ProductQuery query) {
+        return findPage(query, snapshots());
+    }
+
+    /**
+     * @param snapshots snapshots of this catalog or of catalogs of shards to read
+     */
+    private List<Product> findPage(ProductQuery query, Map<ProductManager, ProductQueryEngine.Snapshot> snapshots) {
+        if (shards != null) {
+            return gatherPage(query, snapshots);
+        }
+        ProductQueryEngine.Snapshot snapshot = snapshots.get(this);
+        if (snapshot != null) {
+            return queries.execute(query, snapshot);
+        }
         try {
             readLock.lock();
-            printProductReport(findProduct(id), languageTag, client );
-        } catch (ProductManagerException e) {
-            logger.log(Level.INFO, "Cannot find product" + e.getMessage());
-        } catch (IOException e) {
-            logger.log(Level.SEVERE,"Error printing product" + e.getMessage(), e);
+            return queries.execute(query, index);
         } finally {
             readLock.unlock();
         }
     }
 
-    public void printProducts(Comparator<Product> sorter,String languageTag ) {
-        printProducts(t -> true, sorter, languageTag);
+    /**
+     * @return latest snapshot of this catalog or of catalog of each shard,
+     * {@code null} values for catalogs which are not indexed
+     */
+    private Map<ProductManager, ProductQueryEngine.Snapshot> snapshots() {
+        Map<ProductManager, ProductQueryEngine.Snapshot> snapshots = new HashMap<>();
+        for (ProductManager manager : shards == null ? new ProductManager[]{this} : shards) {
+            snapshots.put(manager, manager.queries.snapshot());
+        }
+        return snapshots;
     }
 
-    public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag) {
+    /**
+     * Each shard returns its first {@code offset + limit} products of the query, so the page is among them.
+     * Sorted lists of shards are merged by sorting their concatenation, which merges the sorted runs.
+     */
+    private List<Product> gatherPage(ProductQuery query, Map<ProductManager, ProductQueryEngine.Snapshot> snapshots) {
+        if (query.limit == 0) {
+            return Collections.emptyList();
+        }
+        ProductQuery shardQuery = query.copy().offset(0).limit((int) Math.min(Integer.MAX_VALUE, (long) query.offset + query.limit));
+        Stream<Product> products = gather(shard -> shard.findPage(shardQuery, snapshots)).stream().flatMap(List::stream);
+        Comparator<Product> comparator = query.comparator();
+        if (comparator != null) {
+            products = products.sorted(comparator);
+        }
+        return products.skip(query.offset).limit(query.limit).collect(Collectors.toList());
+    }
+
+    /**
+     * runs the call on every shard on gather pool and waits for all of them
+     * @return results in order of shards
+     */
+    private <T> List<T> gather(Function<ProductManager, T> call) {
+        List<CompletableFuture<T>> results = new ArrayList<>(shards.length);
+        for (ProductManager shard : shards) {
+            results.add(CompletableFuture.supplyAsync(() -> call.apply(shard), gatherPool));
+        }
+        return results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    private ProductManager shardOf(int id) {
+        return shards[Math.floorMod(Integer.hashCode(id), shards.length)];
+    }
+
+    private static synchronized Writer stdout() {
+        if (stdoutStream != System.out) {
+            stdoutStream = System.out;
+            stdout = new BufferedWriter(new OutputStreamWriter(stdoutStream, StandardCharsets.UTF_8), 1 << 16);
+        }
+        return stdout;
+    }
+
+    /**
+     * rows are rendered into one buffer and copied to the writer without creating strings
+     */
+    private void writeRows(List<Product> products, String languageTag, Writer out) throws IOException {
+        ResourceFormatter formatter = formatter(languageTag);
+        StringBuilder row = new StringBuilder(128);
+        char[] chars = new char[128];
+        for (Product product : products) {
+            row.setLength(0);
+            formatter.appendProduct(row, product);
+            row.append('\n');
+            if (chars.length < row.length()) {
+                chars = new char[row.length() * 2];
+            }
+            row.getChars(0, row.length(), chars, 0);
+            out.write(chars, 0, row.length());
+        }
+    }
+
+    /**
+     * @param query ranges, filter, order and page of products
+     * @return current products selected by the query
+     */
+    public List<Product> findProducts(ProductQuery query) {
+        long start = System.nanoTime();
         try {
-            readLock.lock();
-            ResourceFormatter formatter= formatters.getOrDefault(languageTag, formatters.get("en-GB"));
-
-            StringBuilder txt = new StringBuilder();
-            products.keySet().stream().
-                    sorted(sorter).
-                    filter(filter).
-                    forEach(p -> txt.append(formatter.formatProduct(p) + "\n"));
-            print(txt);
+            return findPage(query);
+        } finally {
+            metrics.record(Operation.FIND_PRODUCTS, start);
+        }
+    }
+
+    /**
+     * @param k number of products
+     * @return at most {@code k} best rated products of the catalog, see {@link #getTopRated(int, Class)}
+     */
+    public List<Product> getTopRated(int k) {
+        return getTopRated(k, null);
+    }
+
+    /**
+     * Products are read from the head of leaderboard updated on each review, without scanning the catalog,
+     * so cost depends on {@code k}, not on catalog size.
+     * @param k number of products
+     * @param type {@code Food.class} or {@code Drink.class} for products of one type, {@code null} for all products
+     * @return at most {@code k} best rated products, products of equal rating ordered by number of reviews,
+     * the most reviewed first, and then by id
+     */
+    public List<Product> getTopRated(int k, Class<? extends Product> type) {
+        long start = System.nanoTime();
+        try {
+            List<Product> products = new ArrayList<>();
+            for (Leaderboard.Entry entry : topRated(k, type)) {
+                Product product = (shards == null ? this : shardOf(entry.getId())).currentProduct(entry.getId());
+                if (product != null) {
+                    products.add(product);
+                }
+            }
+            return products;
+        } finally {
+            metrics.record(Operation.GET_TOP_RATED, start);
+        }
+    }
+
+    /**
+     * Prints at most {@code k} best rated products to standard output, see {@link #getTopRated(int, Class)}
+     */
+    public void printTopRated(int k, Class<? extends Product> type, String languageTag) {
+        long start = System.nanoTime();
+        try {
+            List<Product> products = getTopRated(k, type);
+            Writer out = stdout();
+            synchronized (out) {
+                writeRows(products, languageTag, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            metrics.failed(Operation.PRINT_PRODUCTS);
+            logger.log(Level.SEVERE, "Error printing products " + e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.PRINT_PRODUCTS, start);
+        }
+    }
+
+    /**
+     * Each shard returns its first {@code k} positions, so the top is among them
+     */
+    private List<Leaderboard.Entry> topRated(int k, Class<? extends Product> type) {
+        if (shards != null) {
+            return gather(shard -> shard.topRated(k, type)).stream()
+                    .flatMap(List::stream)
+                    .sorted()
+                    .limit(Math.max(0, k))
+                    .collect(Collectors.toList());
+        }
+        return leaderboard.top(k, type);
+    }
+
+    /**
+     * @return product from the latest snapshot, or from catalog under read lock when catalog is not indexed,
+     * {@code null} when product is not found
+     */
+    private Product currentProduct(int id) {
+        ProductQueryEngine.Snapshot snapshot = queries.snapshot();
+        if (snapshot != null) {
+            return snapshot.get(id);
+        }
+        readLock.lock();
+        try {
+            return index.get(id);
         } finally {
             readLock.unlock();
         }
     }
-    public Review parseReview(String text){
+
+    public Review parseReview(CharSequence text){
         Review review = null;
         try {
-            Object[] objects = reviewFormat.parse(text);
-            review = new Review(
-                    Rateable.convert(Integer.parseInt((String) objects[0])),
-                    (String) objects[1]);
+            review = parser.parseReview(text);
         } catch (ParseException | NumberFormatException e) {
+            metrics.reviewParseFailed();
             logger.log(Level.WARNING, "Error parsing review: "+ text,  e);
         }
         return review;
     }
-    public Product parseProduct(String text){
+    public Product parseProduct(CharSequence text){
         Product product = null;
         try {
-            Object[] objects = productFormat.parse(text);
-            String type = (String) objects[0];
-            int id = Integer.parseInt((String) objects[1]);
-            String name = (String) objects[2];
-            BigDecimal price  = BigDecimal.valueOf(Double.parseDouble((String) objects[3]));
-            Rating rating = Rateable.convert(Integer.parseInt((String) objects[4]));
-            switch (type){
-                case "D":
-                    product = new Drink(id, name, price, rating);
-                    break;
-                case "F":
-                    LocalDate bestBefore = LocalDate.parse((String) objects[5]);
-                    product = new Food(id, name, price, rating, bestBefore);
-                    break;
-                default:
-                    logger.log(Level.WARNING, "Error parsing product: "+ text);
-            }
+            product = parser.parseProduct(text);
         } catch (ParseException | NumberFormatException | DateTimeException e) {
+            metrics.productParseFailed();
             logger.log(Level.WARNING, "Error parsing product: "+ text,  e);
         }
         return product;
     }
-    private List<Review> loadReviews(Product product){
-        List<Review> reviews = null;
+    private List<Review> loadReviews(Product product, ReviewArena arena){
+        List<Review> reviews = newReviewList(arena);
         Path file = dataFolder.resolve(MessageFormat.format(config.getString("reviews.data.file"), product.getId()));
-        if(Files.notExists(file)){
-            reviews = new ArrayList<>();
-        } else {
+        if (reviewCache != null && Files.exists(file)) {
+            return scanReviews(product.getId(), file, reviews);
+        }
+        if(Files.exists(file)){
             try {
-                reviews = Files.lines(file)// UTF-8 by default
-                        .map(text -> parseReview(text))
-                        .filter(review -> review != null)
-                        .collect(Collectors.toList());
+                long size = Files.size(file);
+                if (size >= loadMapThreshold && size <= Integer.MAX_VALUE) {
+                    MappedLines.forEach(file, size, text -> {
+                        Review review = parseReview(text);
+                        if (review != null) {
+                            reviews.add(review);
+                        }
+                    });
+                } else if (size <= Integer.MAX_VALUE) {
+                    byte[] bytes;
+                    try (InputStream in = Files.newInputStream(file)) {
+                        bytes = in.readNBytes((int) size);
+                    }
+                    StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString().lines()
+                            .map(text -> parseReview(text))
+                            .filter(review -> review != null)
+                            .forEach(reviews::add);
+                } else {
+                    try (Stream<String> lines = Files.lines(file)) { // UTF-8 by default
+                        lines.map(text -> parseReview(text))
+                                .filter(review -> review != null)
+                                .forEach(reviews::add);
+                    }
+                }
+                recordLength(file, size);
             } catch (Exception e) {
                 logger.log(Level.WARNING, "Cannot parse reviews" + e.getMessage(), e);
+                reviews.clear();
+            }
+        }
+        return reviews;
+    }
+
+    /**
+     * Reads only ratings of the review file, reviews are read again when list is used
+     * and only the part of the file summarized now
+     * @param added list for reviews added later
+     */
+    private List<Review> scanReviews(int id, Path file, List<Review> added) {
+        RatingSummary summary = new RatingSummary();
+        long length;
+        try {
+            length = Files.size(file);
+            MappedLines.forEach(file, length, text -> {
+                try {
+                    summary.add(parser.parseReviewRating(text));
+                } catch (ParseException | NumberFormatException e) {
+                    metrics.reviewParseFailed();
+                    logger.log(Level.WARNING, "Error parsing review: " + text, e);
+                }
+            });
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Cannot parse reviews" + e.getMessage(), e);
+            return added;
+        }
+        recordLength(file, length);
+        return new LazyReviewList(id, summary, reviewCache, () -> readReviews(file, length), added);
+    }
+
+    /**
+     * @param length number of bytes of review file read into catalog
+     */
+    private void recordLength(Path file, long length) {
+        if (reviewFileLengths != null) {
+            reviewFileLengths.put(file, length);
+        }
+    }
+
+    /**
+     * lines which failed to parse were reported when file was scanned
+     * @param length length of the file when it was scanned, file which is shorter now was replaced
+     *               and is read whole
+     */
+    private List<Review> readReviews(Path file, long length) {
+        List<Review> reviews = new ArrayList<>();
+        try {
+            long size = Files.size(file);
+            if (size < length) {
+                logger.log(Level.WARNING, "Review file " + file + " is shorter than when it was scanned, reading its current content");
             }
+            MappedLines.forEach(file, Math.min(size, length), text -> {
+                try {
+                    reviews.add(parser.parseReview(text));
+                } catch (ParseException | NumberFormatException e) {
+                    // counted by scanReviews
+                }
+            });
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot read reviews " + e.getMessage(), e);
         }
         return reviews;
     }
+
+    /**
+     * @return arena for comments of new catalog, {@code null} when reviews are kept as objects
+     */
+    private ReviewArena newReviewArena() {
+        return reviewsInArena ? new ReviewArena() : null;
+    }
+
+    private static List<Review> newReviewList(ReviewArena arena) {
+        return arena == null ? new ArrayList<>() : new ReviewList(arena);
+    }
     private Product loadProduct(Path file){
         Product product = null;
-        try {
-            product = parseProduct(Files.lines(dataFolder.resolve(file), StandardCharsets.UTF_8).findFirst().orElseThrow());
+        try (Stream<String> lines = Files.lines(dataFolder.resolve(file), StandardCharsets.UTF_8)) {
+            product = parseProduct(lines.findFirst().orElseThrow());
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error parse product " + e.getMessage(), e);
         }
@@ -223,133 +943,879 @@ public class ProductManager {
 
     }
 
+    /**
+     * loads product and review files on bounded pool of {@code load.threads} threads,
+     * results are merged in file listing order so catalog is the same as with sequential load
+     */
     private void loadAllData(){
+        long start = System.nanoTime();
+        int threads = loadThreads > 0 ? loadThreads : Runtime.getRuntime().availableProcessors();
+        ExecutorService loaders = Executors.newFixedThreadPool(threads);
         try {
-            products = Files.list(dataFolder)
-                    .filter(file -> file.getFileName().toString().startsWith("product"))
-                    .map(this::loadProduct)
-                    .filter(product -> product != null)
-                    .collect(Collectors.toMap(Function.identity(), product -> loadReviews(product)));
+            List<Path> files;
+            try (Stream<Path> list = Files.list(dataFolder)) {
+                files = list.filter(file -> file.getFileName().toString().startsWith("product"))
+                        .collect(Collectors.toList());
+            }
+            AtomicInteger loaded = new AtomicInteger();
+            int step = Math.max(1, files.size() / 10);
+            ReviewArena arena = newReviewArena();
+            List<Future<Map.Entry<Product, List<Review>>>> results = new ArrayList<>(files.size());
+            for (Path file : files) {
+                results.add(loaders.submit(() -> {
+                    Product product = loadProduct(file);
+                    Map.Entry<Product, List<Review>> entry = product == null ? null : Map.entry(product, loadReviews(product, arena));
+                    int count = loaded.incrementAndGet();
+                    if (count % step == 0) {
+                        logger.log(Level.INFO, "Loaded " + count + " of " + files.size() + " product files");
+                    }
+                    return entry;
+                }));
+            }
+            Map<Product, List<Review>> catalog = new ConcurrentHashMap<>();
+            for (Future<Map.Entry<Product, List<Review>>> result : results) {
+                Map.Entry<Product, List<Review>> entry = result.get();
+                if (entry != null) {
+                    catalog.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+            rebuildIndexes(catalog, arena);
+            logger.log(Level.INFO, "Loaded " + catalog.size() + " products from " + files.size() + " files in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms on " + threads + " threads");
         } catch (Exception e) {
            logger.log(Level.SEVERE, "Error loading data " +  e.getMessage(), e);
+        } finally {
+            loaders.shutdown();
         }
     }
 
     public Map<String, String> getDiscounts(String languageTag) {
+        long start = System.nanoTime();
         try {
-            readLock.lock();
-            ResourceFormatter formatter= formatters.getOrDefault(languageTag, formatters.get("en-GB"));
-            return products.keySet().stream().collect(
-                    Collectors.groupingBy(
-                            p -> p.getRating().getStars(),
-                            Collectors.collectingAndThen(
-                                    Collectors.summingDouble(p -> p.getDiscount().doubleValue()),
-                                    number -> formatter.numberFormat.format(number)
-                            )
-                    ));
+            ResourceFormatter formatter = formatter(languageTag);
+            Map<String, String> result = new HashMap<>();
+            discountTotals().forEach((rating, total) -> result.put(rating.getStars(), formatter.formatPrice(total)));
+            return result;
         } finally {
-            readLock.unlock();
+            metrics.record(Operation.GET_DISCOUNTS, start);
+        }
+    }
+
+    /**
+     * Totals are consistent without catalog lock, each change and reading of totals is atomic
+     * @return discount totals of the catalog, sums of totals of all shards when catalog is partitioned
+     */
+    private Map<Rating, BigDecimal> discountTotals() {
+        if (shards != null) {
+            Map<Rating, BigDecimal> totals = new EnumMap<>(Rating.class);
+            gather(ProductManager::discountTotals)
+                    .forEach(shardTotals -> shardTotals.forEach((rating, total) -> totals.merge(rating, total, BigDecimal::add)));
+            return totals;
         }
+        return discounts.getTotals();
     }
 
     public Product createProduct(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
+        if (shards != null) {
+            return shardOf(id).createProduct(id, name, price, rating, bestBefore);
+        }
+        long start = System.nanoTime();
         Product product = null;
+        long sequence = 0;
         try {
             writeLock.lock();
             product = new Food(id, name, price, rating, bestBefore);
-            products.putIfAbsent(product, new ArrayList<>());
+            sequence = addProduct(product);
+        } catch (UncheckedIOException | IllegalStateException e) {
+            return journalFailed(Operation.CREATE_PRODUCT, start, e);
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Cannot create food with lock " + e.getMessage(), e);
+            metrics.failed(Operation.CREATE_PRODUCT);
+            metrics.record(Operation.CREATE_PRODUCT, start);
             return null;
         } finally {
             writeLock.unlock();
         }
+        try {
+            awaitJournal(sequence);
+        } catch (UncheckedIOException e) {
+            return journalFailed(Operation.CREATE_PRODUCT, start, e);
+        }
+        metrics.record(Operation.CREATE_PRODUCT, start);
         return product;
     }
 
     public Product createProduct(int id, String name, BigDecimal price, Rating rating) {
+        if (shards != null) {
+            return shardOf(id).createProduct(id, name, price, rating);
+        }
+        long start = System.nanoTime();
         Product product = null;
+        long sequence = 0;
         try {
+            writeLock.lock();
             product = new Drink(id, name, price, rating);
-            products.putIfAbsent(product, new ArrayList<>());
+            sequence = addProduct(product);
+        } catch (UncheckedIOException | IllegalStateException e) {
+            return journalFailed(Operation.CREATE_PRODUCT, start, e);
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Cannot create drink with lock " + e.getMessage(), e);
+            metrics.failed(Operation.CREATE_PRODUCT);
+            metrics.record(Operation.CREATE_PRODUCT, start);
+            return null;
         } finally {
+            writeLock.unlock();
+        }
+        try {
+            awaitJournal(sequence);
+        } catch (UncheckedIOException e) {
+            return journalFailed(Operation.CREATE_PRODUCT, start, e);
         }
+        metrics.record(Operation.CREATE_PRODUCT, start);
         return product;
     }
 
+    /**
+     * Creation is queued to journal before product is added, so catalog never holds a product
+     * the journal refused. Caller holds catalog write lock.
+     * @return journal sequence of creation, 0 when product already exists or nothing was journaled
+     * @throws UncheckedIOException when journal failed, product is not added
+     * @throws IllegalStateException when journal is closed, product is not added
+     */
+    private long addProduct(Product product) {
+        if (index.get(product.getId()) != null) {
+            return 0;
+        }
+        long sequence = journal == null ? 0 : journal.logCreate(product);
+        putProduct(product);
+        return sequence;
+    }
+
+    /**
+     * caller holds catalog write lock
+     * @return {@code false} when product already exists
+     */
+    private boolean putProduct(Product product) {
+        if (index.get(product.getId()) == null) {
+            index.add(product, newReviewList(reviewArena), new RatingSummary());
+            discounts.add(product);
+            queries.add(product);
+            leaderboard.add(product, 0);
+            events.created(product);
+            return true;
+        }
+        return false;
+    }
+
     public Product reviewProduct(int id, Rating rating, String comments) {
+        if (shards != null) {
+            return shardOf(id).reviewProduct(id, rating, comments);
+        }
+        long start = System.nanoTime();
+        Lock productLock = productLocks.writeLock(id);
+        Product product;
+        long sequence = 0;
         try {
-            writeLock.lock();
-            return reviewProduct(findProduct(id), rating, comments);
+            readLock.lock();
+            productLock.lock();
+            product = lookupProduct(id);
+            if (journal != null) {
+                sequence = journal.logReview(id, rating, comments);
+            }
+            product = reviewProduct(product, rating, comments);
+            reportCache.invalidate(id);
         } catch (ProductManagerException e) {
             logger.log(Level.INFO, e.getMessage());
+            metrics.failed(Operation.REVIEW_PRODUCT);
+            metrics.record(Operation.REVIEW_PRODUCT, start);
             return null;
+        } catch (UncheckedIOException | IllegalStateException e) {
+            return journalFailed(Operation.REVIEW_PRODUCT, start, e);
         } finally {
-            writeLock.unlock();
+            productLock.unlock();
+            readLock.unlock();
+        }
+        try {
+            awaitJournal(sequence);
+        } catch (UncheckedIOException e) {
+            return journalFailed(Operation.REVIEW_PRODUCT, start, e);
+        }
+        metrics.record(Operation.REVIEW_PRODUCT, start);
+        return product;
+    }
+
+    public Set<Integer> reviewProducts(Collection<ProductReview> reviews) {
+        return reviewProducts(reviews.stream());
+    }
+
+    /**
+     * Adds many reviews. Reviews are taken in batches of {@code review.bulk.batch.size} and grouped by product,
+     * each group is added under one lock of its product and rating of the product is updated once per group.
+     * Catalog read lock is taken and journal is awaited once per batch.
+     * Reviews of each product are queued to journal before they are added.
+     * @param reviews reviews in order they are added to each product
+     * @return ids of products not found, their reviews are skipped
+     * @throws UncheckedIOException when journal failed, reviews of products added before the failure
+     * were journaled, reviews of the product that failed and of later ones are not added
+     * @throws IllegalStateException when journal is closed, reviews are not added from that product on
+     */
+    public Set<Integer> reviewProducts(Stream<ProductReview> reviews) {
+        long start = System.nanoTime();
+        Set<Integer> failed = new TreeSet<>();
+        try {
+            Map<Integer, List<Review>> batch = new HashMap<>();
+            int count = 0;
+            Iterator<ProductReview> iterator = reviews.iterator();
+            while (iterator.hasNext()) {
+                ProductReview review = iterator.next();
+                batch.computeIfAbsent(review.getProductId(), id -> new ArrayList<>())
+                        .add(new Review(review.getRating(), review.getComments()));
+                if (++count == bulkBatchSize) {
+                    failed.addAll(reviewBatch(batch));
+                    batch = new HashMap<>();
+                    count = 0;
+                }
+            }
+            if (!batch.isEmpty()) {
+                failed.addAll(reviewBatch(batch));
+            }
+            if (!failed.isEmpty()) {
+                metrics.failed(Operation.REVIEW_PRODUCTS);
+                logger.log(Level.INFO, "Reviews of missing products " + failed + " were skipped");
+            }
+            return failed;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.REVIEW_PRODUCTS);
+            throw e;
+        } finally {
+            metrics.record(Operation.REVIEW_PRODUCTS, start);
         }
     }
 
+    /**
+     * @param batch reviews by product id
+     * @return ids of products not found
+     */
+    private Set<Integer> reviewBatch(Map<Integer, List<Review>> batch) {
+        Set<Integer> failed = new HashSet<>();
+        if (shards != null) {
+            Map<ProductManager, Map<Integer, List<Review>>> parts = new HashMap<>();
+            batch.forEach((id, reviews) -> parts.computeIfAbsent(shardOf(id), shard -> new HashMap<>()).put(id, reviews));
+            gather(shard -> shard.reviewBatch(parts.getOrDefault(shard, Map.of()))).forEach(failed::addAll);
+            return failed;
+        }
+        long sequence = 0;
+        try {
+            readLock.lock();
+            for (Map.Entry<Integer, List<Review>> group : batch.entrySet()) {
+                int id = group.getKey();
+                Lock productLock = productLocks.writeLock(id);
+                try {
+                    productLock.lock();
+                    Product product = index.get(id);
+                    if (product == null) {
+                        failed.add(id);
+                        continue;
+                    }
+                    if (journal != null) {
+                        sequence = journal.logReviews(id, group.getValue());
+                    }
+                    reviewProduct(product, group.getValue());
+                    reportCache.invalidate(id);
+                } finally {
+                    productLock.unlock();
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        awaitJournal(sequence);
+        return failed;
+    }
+
+    /**
+     * waits outside of locks, so one fsync of the journal covers many writers
+     * @throws UncheckedIOException when journal failed before the change was written
+     */
+    private void awaitJournal(long sequence) {
+        if (sequence > 0) {
+            journal.awaitDurable(sequence);
+        }
+    }
+
+    /**
+     * Change refused by journal is not applied. Change queued before journal failed stays in memory
+     * but would be lost on restart, so operation is reported as failed either way.
+     * @return {@code null} as result of the operation
+     */
+    private Product journalFailed(Operation operation, long start, RuntimeException e) {
+        logger.log(Level.SEVERE, "Change is not journaled " + e.getMessage(), e);
+        metrics.failed(operation);
+        metrics.record(operation, start);
+        return null;
+    }
+
     private Product reviewProduct(Product oldProduct, Rating rating, String comments) {
-        List<Review> reviews = products.get(oldProduct);
-        products.remove(oldProduct);
-        reviews.add(new Review(rating, comments));
-        int stars = (int) Math.round(reviews.stream().mapToInt(r -> r.getRating().ordinal()).average().orElse(0));
-        Product product = oldProduct.applyRating(Rateable.convert(stars));
-        products.put(product, reviews);
+        return reviewProduct(oldProduct, List.of(new Review(rating, comments)));
+    }
+
+    /**
+     * appends reviews and updates rating of the product once, caller holds lock of the product stripe
+     * @return product with new rating
+     */
+    private Product reviewProduct(Product oldProduct, List<Review> reviews) {
+        List<Review> productReviewList = index.getReviews(oldProduct.getId());
+        RatingSummary summary = index.getRatings(oldProduct.getId());
+        int oldCount = summary.getCount();
+        for (Review review : reviews) {
+            productReviewList.add(review);
+            summary.add(review.getRating());
+            events.reviewed(oldProduct, review);
+        }
+        Rating newRating = summary.getRating();
+        if (newRating == oldProduct.getRating()) {
+            leaderboard.update(oldProduct, oldCount, oldProduct, summary.getCount());
+            return oldProduct;
+        }
+        Product product = oldProduct.applyRating(newRating);
+        leaderboard.update(oldProduct, oldCount, product, summary.getCount());
+        discounts.rerate(oldProduct, product);
+        queries.rerate(oldProduct, product);
+        index.put(product);
+        events.rerated(oldProduct, product);
         return product;
     }
 
+    /**
+     * @param id product id
+     * @return number of reviews of each rating
+     * @throws ProductManagerException when product is not found
+     */
+    public Map<Rating, Integer> getRatingDistribution(int id) throws ProductManagerException {
+        if (shards != null) {
+            return shardOf(id).getRatingDistribution(id);
+        }
+        Lock productLock = productLocks.readLock(id);
+        try {
+            readLock.lock();
+            productLock.lock();
+            return index.getRatings(lookupProduct(id).getId()).getDistribution();
+        } finally {
+            productLock.unlock();
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @param id product id
+     * @return number of reviews of the product
+     * @throws ProductManagerException when product is not found
+     */
+    public int getReviewCount(int id) throws ProductManagerException {
+        if (shards != null) {
+            return shardOf(id).getReviewCount(id);
+        }
+        Lock productLock = productLocks.readLock(id);
+        try {
+            readLock.lock();
+            productLock.lock();
+            return index.getRatings(lookupProduct(id).getId()).getCount();
+        } finally {
+            productLock.unlock();
+            readLock.unlock();
+        }
+    }
+
     public Product findProduct(int id) throws ProductManagerException {
+        if (shards != null) {
+            return shardOf(id).findProduct(id);
+        }
+        long start = System.nanoTime();
+        Lock productLock = productLocks.readLock(id);
         try {
             readLock.lock();
-            return products.keySet().stream()
-                    .filter(p -> p.getId() == id)
-                    .findFirst()
-                    .orElseThrow(() -> new ProductManagerException("Product with id " + id + " not found"));
+            productLock.lock();
+            return lookupProduct(id);
+        } catch (ProductManagerException e) {
+            metrics.failed(Operation.FIND_PRODUCT);
+            throw e;
         } finally {
+            productLock.unlock();
             readLock.unlock();
+            metrics.record(Operation.FIND_PRODUCT, start);
         }
     }
 
-    public void dumpData(){
+    /**
+     * caller holds catalog read lock and lock of the product stripe
+     */
+    private Product lookupProduct(int id) throws ProductManagerException {
+        return found(index.get(id), id);
+    }
+
+    /**
+     * caller holds lock of the product stripe, so product is consistent with its reviews
+     * @return product from the latest snapshot of indexed catalog
+     */
+    private Product snapshotProduct(int id) throws ProductManagerException {
+        return found(queries.snapshot().get(id), id);
+    }
+
+    private static Product found(Product product, int id) throws ProductManagerException {
+        if (product == null) {
+            throw new ProductManagerException("Product with id " + id + " not found");
+        }
+        return product;
+    }
 
+    /**
+     * replaces catalog with loaded products and their reviews and rebuilds indexes and rating aggregates,
+     * caller holds catalog write lock and write locks of all product stripes, or runs in constructor
+     * @param arena arena holding the reviews, reviews added later go to it
+     */
+    private void rebuildIndexes(Map<Product, List<Review>> catalog, ReviewArena arena) {
+        reviewArena = arena;
+        reportCache.clear();
+        if (reviewCache != null) {
+            reviewCache.clear();
+        }
+        index.clear();
+        catalog.forEach((product, reviewList) -> index.add(product, reviewList, reviewList instanceof LazyReviewList
+                ? ((LazyReviewList) reviewList).getFileSummary() : new RatingSummary(reviewList)));
+        discounts.reset(catalog.keySet());
+        queries.reset(catalog.keySet());
+        leaderboard.reset(catalog.keySet(), product -> index.getRatings(product.getId()).getCount());
+    }
+
+    /**
+     * Writes binary snapshot of the catalog to {@code temp.folder}.
+     * Products and numbers of their reviews are captured under catalog write lock,
+     * reviews are then copied product by product, so snapshot is consistent
+     * while reviews keep coming.
+     */
+    public void dumpData(){
+        if (shards != null) {
+            gather(shard -> {
+                shard.dumpData();
+                return shard;
+            });
+            return;
+        }
+        long start = System.nanoTime();
         try {
             if(Files.notExists(tempFolder)) {
-                Files.createDirectory(tempFolder);
+                Files.createDirectories(tempFolder);
             }
-            Path tmpFile = tempFolder.resolve(MessageFormat.format(config.getString("temp.file"), Instant.now().toEpochMilli()));
-
-            try (ObjectOutputStream out =  new ObjectOutputStream(Files.newOutputStream(tmpFile, StandardOpenOption.CREATE))){
-                out.writeObject(products);
-                products = new HashMap<>();
+            long stamp = Instant.now().toEpochMilli();
+            List<Product> view;
+            List<List<Review>> reviewLists = new ArrayList<>();
+            int[] reviewCounts;
+            try {
+                writeLock.lock();
+                if (journal != null) {
+                    stamp = journal.roll(stamp);
+                }
+                view = index.values();
+                reviewCounts = new int[view.size()];
+                for (int i = 0; i < view.size(); i++) {
+                    List<Review> reviews = index.getReviews(view.get(i).getId());
+                    reviewLists.add(reviews);
+                    reviewCounts[i] = reviews.size();
+                }
+            } finally {
+                writeLock.unlock();
             }
+            Path tmpFile = tempFolder.resolve(MessageFormat.format(config.getString("temp.file"), String.valueOf(stamp)));
+            CatalogSnapshot.write(tmpFile, view, i -> copyReviews(view.get(i).getId(), reviewLists.get(i), reviewCounts[i]));
+            logger.log(Level.INFO, "Dumped " + view.size() + " products to " + tmpFile + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
         } catch (Exception e) {
+            metrics.failed(Operation.DUMP_DATA);
             logger.log(Level.SEVERE, "Error dumping " + e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.DUMP_DATA, start);
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * reviews are only appended, so first {@code count} reviews are the reviews product had when view was captured
+     */
+    private List<Review> copyReviews(int id, List<Review> reviews, int count) {
+        Lock productLock = productLocks.readLock(id);
+        try {
+            productLock.lock();
+            return new ArrayList<>(reviews.subList(0, count));
+        } finally {
+            productLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces catalog with the latest snapshot from {@code temp.folder}.
+     * Changes journaled since the snapshot are dropped with the catalog, so journal is rolled under the same
+     * write lock, as {@link #dumpData()} does, and snapshot is saved again under timestamp of the new segment.
+     * Restart then replays only changes made after restore.
+     */
     public void restoreData(){
+        if (shards != null) {
+            gather(shard -> {
+                shard.restoreData();
+                return shard;
+            });
+            return;
+        }
+        long start = System.nanoTime();
         try {
+            restoreSnapshot(latestSnapshot().orElseThrow());
+        } catch (Exception e) {
+            metrics.failed(Operation.RESTORE_DATA);
+            logger.log(Level.SEVERE, "Error loading  " + e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.RESTORE_DATA, start);
+        }
+    }
 
-            Path tmpFile = Files.list(tempFolder)
-                    .filter(file -> file.getFileName().toString().endsWith("tmp"))
-                    .findFirst().orElseThrow();
-            try (ObjectInputStream in =  new ObjectInputStream(Files.newInputStream(tmpFile, StandardOpenOption.DELETE_ON_CLOSE))){
-                Object o = in.readObject();
-                if(o instanceof  HashMap) {
-                    products = (HashMap) o;
-                } else {
-                    logger.log(Level.SEVERE, "Invalid type of tmp file");
+    /**
+     * @return timestamp of loaded snapshot or -1 when there is no snapshot to load
+     */
+    private long loadLatestSnapshot() {
+        try {
+            Optional<Path> snapshot = latestSnapshot();
+            if (snapshot.isPresent()) {
+                long start = System.nanoTime();
+                restoreSnapshot(snapshot.get());
+                logger.log(Level.INFO, "Loaded " + index.size() + " products from " + snapshot.get() + " in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms");
+                return numberOf(snapshot.get(), config.getString("temp.file"));
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Cannot load snapshot, loading data files " + e.getMessage(), e);
+        }
+        return -1;
+    }
+
+    /**
+     * Checks number of shards recorded in {@code shard.count.file} of {@code data.folder} and records it on first start.
+     * Products, reviews, journal and snapshots of shards are not moved between shards, so manager refuses to start
+     * with different number of shards. Only unpartitioned catalog which has no journal or snapshot yet
+     * may be partitioned, number of shards is recorded after it is.
+     * Data folder without the record counts as partitioned into its existing shard subfolders.
+     * @return {@code true} when data files of {@code data.folder} are to be partitioned into shards
+     * @throws IllegalStateException when data folder is partitioned into different number of shards
+     */
+    private boolean checkShardCount(int shardCount) {
+        Path file = dataFolder.resolve(config.getString("shard.count.file"));
+        try {
+            int recorded = 0;
+            if (Files.exists(file)) {
+                recorded = Integer.parseInt(Files.readString(file).trim());
+            } else {
+                while (Files.isDirectory(shardFolder(recorded))) {
+                    recorded++;
+                }
+                recorded = Math.max(1, recorded);
+            }
+            if (recorded == shardCount) {
+                Files.createDirectories(dataFolder);
+                Files.writeString(file, String.valueOf(shardCount));
+                return false;
+            }
+            if (recorded > 1) {
+                throw new IllegalStateException("Data folder " + dataFolder + " is partitioned into " + recorded
+                        + " shards, catalog.shards is " + shardCount);
+            }
+            if (containsFiles(journalFolder, config.getString("journal.file"))
+                    || containsFiles(tempFolder, config.getString("temp.file"))) {
+                throw new IllegalStateException("Journal and snapshots of " + dataFolder
+                        + " cannot be partitioned, catalog.shards is " + shardCount);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read number of shards of " + dataFolder, e);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Malformed number of shards in " + file, e);
+        }
+    }
+
+    private Path shardFolder(int shard) {
+        return dataFolder.resolve(MessageFormat.format(config.getString("shard.folder"), shard));
+    }
+
+    private static boolean containsFiles(Path folder, String pattern) throws IOException {
+        if (Files.notExists(folder)) {
+            return false;
+        }
+        PathMatcher matcher = folder.getFileSystem().getPathMatcher("glob:" + MessageFormat.format(pattern, "*"));
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.anyMatch(file -> matcher.matches(file.getFileName()));
+        }
+    }
+
+    /**
+     * Copies product files of unpartitioned {@code data.folder} with their review files into subfolders of their shards
+     * and records number of shards. Files in {@code data.folder} are left in place.
+     */
+    private void partitionData(int shardCount) {
+        try {
+            Path[] targets = new Path[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                targets[i] = Files.createDirectories(shardFolder(i));
+            }
+            String productPattern = config.getString("product.data.file");
+            PathMatcher matcher = dataFolder.getFileSystem().getPathMatcher("glob:" + MessageFormat.format(productPattern, "*"));
+            List<Path> files;
+            try (Stream<Path> list = Files.list(dataFolder)) {
+                files = list.filter(file -> matcher.matches(file.getFileName()) && Files.isRegularFile(file))
+                        .collect(Collectors.toList());
+            }
+            int copied = 0;
+            for (Path file : files) {
+                int id;
+                try {
+                    id = (int) numberOf(file, productPattern);
+                } catch (ParseException | NumberFormatException e) {
+                    logger.log(Level.WARNING, "Not a product file " + file, e);
+                    continue;
+                }
+                Path target = targets[Math.floorMod(Integer.hashCode(id), shardCount)];
+                Files.copy(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                Path reviews = dataFolder.resolve(MessageFormat.format(config.getString("reviews.data.file"), id));
+                if (Files.exists(reviews)) {
+                    Files.copy(reviews, target.resolve(reviews.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+                copied++;
+            }
+            Files.writeString(dataFolder.resolve(config.getString("shard.count.file")), String.valueOf(shardCount));
+            logger.log(Level.INFO, "Partitioned " + copied + " products of " + dataFolder + " into " + shardCount + " shards");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot partition data of " + dataFolder, e);
+        }
+    }
+
+    private static long numberOf(Path file, String pattern) throws ParseException {
+        return Long.parseLong((String) new MessageFormat(pattern).parse(file.getFileName().toString())[0]);
+    }
+
+    /**
+     * replays journal segments not covered by loaded snapshot, snapshot and the segment
+     * started at the same moment share timestamp
+     * @param fromStamp timestamp of loaded snapshot, 0 when catalog was loaded from data files
+     * @return timestamp of the latest segment or 0 when there are no segments
+     */
+    private long replayJournal(long fromStamp) {
+        long start = System.nanoTime();
+        long lastStamp = 0;
+        int events = 0;
+        String pattern = config.getString("journal.file");
+        PathMatcher matcher = journalFolder.getFileSystem().getPathMatcher("glob:" + MessageFormat.format(pattern, "*"));
+        CatalogJournal.Listener listener = new CatalogJournal.Listener() {
+            @Override
+            public void created(Product product) {
+                addProduct(product);
+            }
+
+            @Override
+            public void reviewed(int id, Rating rating, String comments) {
+                try {
+                    reviewProduct(lookupProduct(id), rating, comments);
+                } catch (ProductManagerException e) {
+                    logger.log(Level.WARNING, "Journal review of missing product " + e.getMessage());
                 }
             }
+        };
+        try {
+            if (Files.notExists(journalFolder)) {
+                return 0;
+            }
+            List<Path> segments;
+            try (Stream<Path> files = Files.list(journalFolder)) {
+                segments = files.filter(file -> matcher.matches(file.getFileName())).collect(Collectors.toList());
+            }
+            Map<Long, Path> ordered = new TreeMap<>();
+            for (Path segment : segments) {
+                ordered.put(numberOf(segment, pattern), segment);
+            }
+            for (Map.Entry<Long, Path> segment : ordered.entrySet()) {
+                lastStamp = segment.getKey();
+                if (segment.getKey() >= fromStamp) {
+                    events += CatalogJournal.replay(segment.getValue(), listener);
+                }
+            }
+            logger.log(Level.INFO, "Replayed " + events + " journal events in " + (System.nanoTime() - start) / 1_000_000 + " ms");
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error loading  " + e.getMessage(), e);
+            logger.log(Level.SEVERE, "Error replaying journal " + e.getMessage(), e);
         }
+        return lastStamp;
+    }
 
+    private void openJournal(long lastStamp) {
+        try {
+            CatalogJournal opened = new CatalogJournal(journalFolder, config.getString("journal.file"),
+                    Math.max(Instant.now().toEpochMilli(), lastStamp + 1),
+                    Integer.parseInt(config.getString("journal.batch.size")),
+                    Long.parseLong(config.getString("journal.batch.millis")),
+                    CatalogJournal.SyncPolicy.valueOf(config.getString("journal.fsync").toUpperCase()));
+            journal = opened;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Cannot open journal, changes will not be journaled " + e.getMessage(), e);
+        }
     }
 
-}
+    /**
+     * Data files stay the source of changes they bring, so changes applied from them are not journaled,
+     * data files are read again on restart
+     */
+    private void watchData() {
+        FileSystem fileSystem = dataFolder.getFileSystem();
+        String productPattern = config.getString("product.data.file");
+        String reviewsPattern = config.getString("reviews.data.file");
+        PathMatcher reviewFiles = fileSystem.getPathMatcher("glob:" + MessageFormat.format(reviewsPattern, "*"));
+        try {
+            DataWatcher watcher = new DataWatcher(dataFolder,
+                    fileSystem.getPathMatcher("glob:" + MessageFormat.format(productPattern, "*")),
+                    reviewFiles, reviewOffsets(reviewFiles, reviewsPattern),
+                    new DataWatcher.Listener() {
+                        @Override
+                        public void productFile(Path file) {
+                            ingestProduct(file);
+                        }
+
+                        @Override
+                        public boolean reviewLines(Path file, List<String> lines) {
+                            return ingestReviews(file, reviewsPattern, lines);
+                        }
+                    });
+            dataWatcher = watcher;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Cannot watch data folder, new data files will be read on restart " + e.getMessage(), e);
+        } finally {
+            reviewFileLengths = null;
+        }
+    }
+
+    /**
+     * Review files read at load are watched from their recorded lengths. Reviews of products restored
+     * from snapshot are in the snapshot, so their files are watched from their current end.
+     * Files of products which are not in catalog are read from the start when their product is added.
+     * @return offsets of review files from which data watcher reads appended lines
+     */
+    private Map<Path, Long> reviewOffsets(PathMatcher reviewFiles, String reviewsPattern) throws IOException {
+        Map<Path, Long> offsets = new HashMap<>();
+        if (Files.notExists(dataFolder)) {
+            return offsets;
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dataFolder)) {
+            files = list.filter(file -> reviewFiles.matches(file.getFileName())).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Long length = reviewFileLengths.get(file);
+            if (length != null) {
+                offsets.put(file, length);
+            } else {
+                try {
+                    if (index.get((int) numberOf(file, reviewsPattern)) != null) {
+                        offsets.put(file, Files.size(file));
+                    }
+                } catch (ParseException | NumberFormatException e) {
+                    // not a review file of a product, reported when it changes
+                }
+            }
+        }
+        return offsets;
+    }
+
+    private void ingestProduct(Path file) {
+        Product product = loadProduct(file);
+        if (product == null) {
+            return;
+        }
+        boolean added;
+        try {
+            writeLock.lock();
+            added = putProduct(product);
+        } finally {
+            writeLock.unlock();
+        }
+        if (added) {
+            logger.log(Level.INFO, "Added product " + product.getId() + " from " + file);
+        }
+    }
+
+    /**
+     * applies lines under one lock of the product
+     * @return {@code false} when product of the file is not in catalog yet
+     */
+    private boolean ingestReviews(Path file, String reviewsPattern, List<String> lines) {
+        int id;
+        try {
+            id = (int) numberOf(file, reviewsPattern);
+        } catch (ParseException | NumberFormatException e) {
+            logger.log(Level.WARNING, "Cannot find product id of reviews " + file, e);
+            return true;
+        }
+        Lock productLock = productLocks.writeLock(id);
+        try {
+            readLock.lock();
+            productLock.lock();
+            Product product = index.get(id);
+            if (product == null) {
+                return false;
+            }
+            List<Review> reviews = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                Review review = parseReview(line);
+                if (review != null) {
+                    reviews.add(review);
+                }
+            }
+            reviewProduct(product, reviews);
+            reportCache.invalidate(id);
+            return true;
+        } finally {
+            productLock.unlock();
+            readLock.unlock();
+        }
+    }
 
+    /**
+     * snapshot names differ only by fixed width timestamp, so the greatest name is the latest snapshot
+     */
+    private Optional<Path> latestSnapshot() throws IOException {
+        if (Files.notExists(tempFolder)) {
+            return Optional.empty();
+        }
+        PathMatcher matcher = tempFolder.getFileSystem()
+                .getPathMatcher("glob:" + MessageFormat.format(config.getString("temp.file"), "*"));
+        try (Stream<Path> files = Files.list(tempFolder)) {
+            return files.filter(file -> matcher.matches(file.getFileName()))
+                    .max(Comparator.comparing(file -> file.getFileName().toString()));
+        }
+    }
+
+    /**
+     * catalog is replaced only when journal was rolled, or when there is no journal yet
+     */
+    private void restoreSnapshot(Path file) throws IOException {
+        ReviewArena arena = newReviewArena();
+        Map<Product, List<Review>> restored = CatalogSnapshot.read(file, () -> newReviewList(arena));
+        Path copy = null;
+        if (journal != null) {
+            copy = Files.copy(file, file.resolveSibling(file.getFileName() + ".restored"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        try {
+            writeLock.lock();
+            productLocks.lockAll();
+            if (copy != null) {
+                long stamp = journal.roll(Instant.now().toEpochMilli());
+                Files.move(copy, tempFolder.resolve(MessageFormat.format(config.getString("temp.file"), String.valueOf(stamp))),
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            rebuildIndexes(restored, arena);
+        } finally {
+            productLocks.unlockAll();
+            writeLock.unlock();
+        }
+    }
+
+}
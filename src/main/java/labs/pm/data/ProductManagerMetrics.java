@@ -0,0 +1,183 @@
+package labs.pm.data;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * {@code ProductManagerMetrics} counts calls and failures of {@link ProductManager} operations,
+ * records their latencies and wait and hold times of the locks, and counts lines that failed to parse.
+ * Recording only updates striped counters, so it is cheap enough to stay on in production.
+ * Locks are timed on sampled acquisitions only, locks of different stripes record into different histograms,
+ * histograms are merged when metrics are read.
+ * @author mserge
+ * @version 1
+ */
+class ProductManagerMetrics implements ProductManagerMetricsMXBean {
+    private static final Logger logger = Logger.getLogger(ProductManagerMetrics.class.getName());
+
+    enum Operation {
+        FIND_PRODUCT("findProduct"),
+        FIND_PRODUCTS("findProducts"),
+        GET_TOP_RATED("getTopRated"),
+        REVIEW_PRODUCT("reviewProduct"),
+        REVIEW_PRODUCTS("reviewProducts"),
+        CREATE_PRODUCT("createProduct"),
+        PRINT_PRODUCTS("printProducts"),
+        WRITE_PRODUCTS("writeProducts"),
+        PRINT_PRODUCT_REPORT("printProductReport"),
+        SUBMIT_PRODUCT_REPORT("submitProductReport"),
+        GET_DISCOUNTS("getDiscounts"),
+        DUMP_DATA("dumpData"),
+        RESTORE_DATA("restoreData");
+
+        private final String operationName;
+
+        Operation(String operationName) {
+            this.operationName = operationName;
+        }
+    }
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] errors = new LongAdder[Operation.values().length];
+    /**
+     * number of histograms of each lock name, locks wrapped with the same name take them in turn
+     */
+    private static final int LOCK_HISTOGRAMS = 8;
+
+    private final Map<String, LatencyHistogram[]> locks = new LinkedHashMap<>();
+    private final Map<String, Integer> timedLocks = new HashMap<>();
+    private final int lockSampleRate;
+    private final LongAdder productParseFailures = new LongAdder();
+    private final LongAdder reviewParseFailures = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+
+    /**
+     * @param lockSampleRate one of this many lock acquisitions is timed
+     */
+    ProductManagerMetrics(int lockSampleRate) {
+        this.lockSampleRate = Math.max(1, lockSampleRate);
+        for (Operation operation : Operation.values()) {
+            latencies[operation.ordinal()] = new LatencyHistogram();
+            errors[operation.ordinal()] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param start {@link System#nanoTime()} when operation started
+     */
+    void record(Operation operation, long start) {
+        latencies[operation.ordinal()].record(System.nanoTime() - start);
+    }
+
+    void failed(Operation operation) {
+        errors[operation.ordinal()].increment();
+    }
+
+    void productParseFailed() {
+        productParseFailures.increment();
+    }
+
+    void reviewParseFailed() {
+        reviewParseFailures.increment();
+    }
+
+    void eventDropped() {
+        droppedEvents.increment();
+    }
+
+    /**
+     * Wraps lock so its wait and hold times are recorded as {@code name.wait} and {@code name.hold},
+     * locks wrapped with the same name, such as stripes, take one of {@value #LOCK_HISTOGRAMS} histograms in turn.
+     * Must be called before metrics are registered.
+     */
+    Lock timed(Lock lock, String name) {
+        int slot = timedLocks.merge(name, 1, Integer::sum) % LOCK_HISTOGRAMS;
+        return new TimedLock(lock, histograms(name + ".wait")[slot], histograms(name + ".hold")[slot], lockSampleRate);
+    }
+
+    private LatencyHistogram[] histograms(String name) {
+        return locks.computeIfAbsent(name, key -> {
+            LatencyHistogram[] histograms = new LatencyHistogram[LOCK_HISTOGRAMS];
+            Arrays.setAll(histograms, i -> new LatencyHistogram());
+            return histograms;
+        });
+    }
+
+    /**
+     * Registers metrics in platform MBean server, failure is logged and ignored
+     */
+    void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Cannot register metrics as " + name + " " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, LatencySummary> getOperations() {
+        Map<String, LatencySummary> result = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            result.put(operation.operationName, new LatencySummary(latencies[operation.ordinal()]));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            result.put(operation.operationName, errors[operation.ordinal()].sum());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, LatencySummary> getLocks() {
+        Map<String, LatencySummary> result = new LinkedHashMap<>();
+        locks.forEach((name, histograms) -> {
+            LatencyHistogram merged = new LatencyHistogram();
+            for (LatencyHistogram histogram : histograms) {
+                merged.add(histogram);
+            }
+            result.put(name, new LatencySummary(merged));
+        });
+        return result;
+    }
+
+    @Override
+    public long getProductParseFailures() {
+        return productParseFailures.sum();
+    }
+
+    @Override
+    public long getReviewParseFailures() {
+        return reviewParseFailures.sum();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (Operation operation : Operation.values()) {
+            latencies[operation.ordinal()].reset();
+            errors[operation.ordinal()].reset();
+        }
+        locks.values().forEach(histograms -> Arrays.stream(histograms).forEach(LatencyHistogram::reset));
+        productParseFailures.reset();
+        reviewParseFailures.reset();
+        droppedEvents.reset();
+    }
+}
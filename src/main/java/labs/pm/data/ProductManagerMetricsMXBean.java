@@ -0,0 +1,42 @@
+package labs.pm.data;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ProductManagerMetrics}, registered in platform MBean server
+ * under {@code metrics.jmx.name}. Latencies are in microseconds.
+ * @author mserge
+ * @version 1
+ */
+public interface ProductManagerMetricsMXBean {
+    /**
+     * @return latency of each public operation by operation name
+     */
+    Map<String, LatencySummary> getOperations();
+
+    /**
+     * @return number of failed calls of each operation by operation name
+     */
+    Map<String, Long> getErrors();
+
+    /**
+     * @return wait and hold times of catalog and product locks,
+     * for example {@code catalog.write.wait} or {@code product.read.hold},
+     * counted for one of {@code metrics.lock.sample} acquisitions
+     */
+    Map<String, LatencySummary> getLocks();
+
+    long getProductParseFailures();
+
+    long getReviewParseFailures();
+
+    /**
+     * @return number of product events dropped because publisher queue or subscriber buffer was full
+     */
+    long getDroppedEvents();
+
+    /**
+     * clears all counters and histograms
+     */
+    void reset();
+}
@@ -0,0 +1,258 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * {@code ProductQuery} describes products to select from catalog: ranges of price, rating and best before date,
+ * any other filter, order, offset and limit.
+ * Ranges and {@link Order} are served by sorted indexes, so query with limit reads only the products it returns,
+ * opaque filter and comparator are applied to the products selected by ranges, or to whole catalog.
+ * Query is built by chained calls and is not thread safe.
+ * <p>
+ * Results may be read in pages: query ordered by index continues after the key and id of the last product
+ * of previous page, so each page reads only its own products, other queries continue from offset.
+ * Listing written at once continues query ordered by index after the last product of previous chunk,
+ * query sorted by comparator is sorted once for the whole listing.
+ * @author mserge
+ * @version 1
+ */
+public class ProductQuery {
+    /**
+     * orders backed by indexes, equal keys are ordered by id
+     */
+    public enum Order {
+        ID(Comparator.comparingInt(Product::getId), Product::getId, Integer::valueOf),
+        PRICE(Comparator.comparing(Product::getPrice).thenComparingInt(Product::getId), Product::getPrice, BigDecimal::new),
+        RATING(Comparator.comparing(Product::getRating).thenComparingInt(Product::getId), Product::getRating, Rating::valueOf),
+        BEST_BEFORE(Comparator.comparing(Product::getBestBefore).thenComparingInt(Product::getId), Product::getBestBefore, LocalDate::parse);
+
+        private final Comparator<Product> comparator;
+        private final Function<Product, Comparable<?>> key;
+        private final Function<String, Comparable<?>> keyParser;
+
+        Order(Comparator<Product> comparator, Function<Product, Comparable<?>> key, Function<String, Comparable<?>> keyParser) {
+            this.comparator = comparator;
+            this.key = key;
+            this.keyParser = keyParser;
+        }
+    }
+
+    BigDecimal minPrice;
+    BigDecimal maxPrice;
+    Rating minRating;
+    Rating maxRating;
+    LocalDate minBestBefore;
+    LocalDate maxBestBefore;
+    Predicate<Product> filter;
+    Comparator<Product> sorter;
+    Order order;
+    boolean descending;
+    int offset;
+    int limit = Integer.MAX_VALUE;
+    /**
+     * key and id of the last product of previous page, {@code null} key for the first page
+     */
+    Comparable<?> afterKey;
+    int afterId;
+
+    /**
+     * @param min lowest price, {@code null} for no lower bound
+     * @param max highest price, {@code null} for no upper bound
+     */
+    public ProductQuery priceBetween(BigDecimal min, BigDecimal max) {
+        minPrice = min;
+        maxPrice = max;
+        return this;
+    }
+
+    /**
+     * @param min lowest rating, {@code null} for no lower bound
+     * @param max highest rating, {@code null} for no upper bound
+     */
+    public ProductQuery ratingBetween(Rating min, Rating max) {
+        minRating = min;
+        maxRating = max;
+        return this;
+    }
+
+    /**
+     * @param min earliest best before date, {@code null} for no lower bound
+     * @param max latest best before date, {@code null} for no upper bound
+     */
+    public ProductQuery bestBeforeBetween(LocalDate min, LocalDate max) {
+        minBestBefore = min;
+        maxBestBefore = max;
+        return this;
+    }
+
+    /**
+     * adds filter which can not use indexes, filters are combined with and
+     */
+    public ProductQuery filter(Predicate<Product> filter) {
+        this.filter = this.filter == null ? filter : this.filter.and(filter);
+        return this;
+    }
+
+    public ProductQuery orderBy(Order order) {
+        return orderBy(order, false);
+    }
+
+    /**
+     * orders products by indexed key, replaces comparator given by {@link #sortedBy}
+     */
+    public ProductQuery orderBy(Order order, boolean descending) {
+        this.order = order;
+        this.descending = descending;
+        sorter = null;
+        return this;
+    }
+
+    /**
+     * orders products by any comparator, selected products are sorted,
+     * with limit only {@code offset + limit} best products are kept while sorting
+     */
+    public ProductQuery sortedBy(Comparator<Product> sorter) {
+        this.sorter = sorter;
+        order = null;
+        return this;
+    }
+
+    /**
+     * @param offset number of matching products to skip
+     */
+    public ProductQuery offset(int offset) {
+        this.offset = Math.max(0, offset);
+        return this;
+    }
+
+    /**
+     * @param limit maximal number of products to return
+     */
+    public ProductQuery limit(int limit) {
+        this.limit = Math.max(0, limit);
+        return this;
+    }
+
+    /**
+     * @return copy of the query, filter and comparator are shared
+     */
+    ProductQuery copy() {
+        ProductQuery copy = new ProductQuery()
+                .priceBetween(minPrice, maxPrice)
+                .ratingBetween(minRating, maxRating)
+                .bestBeforeBetween(minBestBefore, maxBestBefore)
+                .offset(offset)
+                .limit(limit);
+        copy.filter = filter;
+        copy.sorter = sorter;
+        copy.order = order;
+        copy.descending = descending;
+        copy.afterKey = afterKey;
+        copy.afterId = afterId;
+        return copy;
+    }
+
+    /**
+     * @return {@code true} when query is ordered by index, so pages continue after the last product
+     */
+    boolean isKeyset() {
+        return sorter == null && order != null;
+    }
+
+    /**
+     * continues query ordered by index after given product, offset is cleared
+     */
+    ProductQuery after(Product product) {
+        afterKey = order.key.apply(product);
+        afterId = product.getId();
+        offset = 0;
+        return this;
+    }
+
+    /**
+     * @return {@code true} when query continues after product of previous page or chunk
+     */
+    boolean hasCursor() {
+        return afterKey != null;
+    }
+
+    /**
+     * @return {@code true} when there is no previous page or product comes after the last product of it
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    boolean isAfterCursor(Product product) {
+        if (afterKey == null) {
+            return true;
+        }
+        int result = ((Comparable) order.key.apply(product)).compareTo(afterKey);
+        if (result == 0) {
+            result = Integer.compare(product.getId(), afterId);
+        }
+        return descending ? result < 0 : result > 0;
+    }
+
+    /**
+     * @param last last product of current page
+     * @param nextOffset offset of the next page, used by queries not ordered by index
+     * @return token of the next page
+     */
+    String pageToken(Product last, int nextOffset) {
+        if (isKeyset()) {
+            return order.name() + ':' + (descending ? 'D' : 'A') + ':' + last.getId() + ':' + order.key.apply(last);
+        }
+        return "OFFSET:" + nextOffset;
+    }
+
+    /**
+     * positions query at the page of token returned by {@link #pageToken}
+     * @throws IllegalArgumentException when token is malformed or belongs to query of another order
+     */
+    void startAt(String token) {
+        String[] parts = token.split(":", 4);
+        try {
+            if (parts.length == 2 && parts[0].equals("OFFSET") && !isKeyset()) {
+                offset = Integer.parseInt(parts[1]);
+                afterKey = null;
+                return;
+            }
+            if (parts.length == 4 && isKeyset() && parts[0].equals(order.name())
+                    && parts[1].equals(descending ? "D" : "A")) {
+                afterId = Integer.parseInt(parts[2]);
+                afterKey = order.keyParser.apply(parts[3]);
+                offset = 0;
+                return;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed page token " + token, e);
+        }
+        throw new IllegalArgumentException("Page token " + token + " does not belong to the query");
+    }
+
+    /**
+     * @return comparator of the query or {@code null} when order does not matter,
+     * products equal by comparator given by {@link #sortedBy} are ordered by id
+     */
+    Comparator<Product> comparator() {
+        if (sorter != null) {
+            return sorter.thenComparingInt(Product::getId);
+        }
+        if (order != null) {
+            return descending ? order.comparator.reversed() : order.comparator;
+        }
+        return null;
+    }
+
+    boolean matches(Product product) {
+        return (minPrice == null || product.getPrice().compareTo(minPrice) >= 0)
+                && (maxPrice == null || product.getPrice().compareTo(maxPrice) <= 0)
+                && (minRating == null || product.getRating().compareTo(minRating) >= 0)
+                && (maxRating == null || product.getRating().compareTo(maxRating) <= 0)
+                && (minBestBefore == null || !product.getBestBefore().isBefore(minBestBefore))
+                && (maxBestBefore == null || !product.getBestBefore().isAfter(maxBestBefore))
+                && (filter == null || filter.test(product));
+    }
+}
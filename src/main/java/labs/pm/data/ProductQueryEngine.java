@@ -0,0 +1,290 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@code ProductQueryEngine} keeps sorted indexes on id, price, rating and best before date and runs {@link ProductQuery}.
+ * <p>
+ * Query ordered by indexed key walks that index and stops after {@code offset + limit} matching products,
+ * unless range on another key selects fewer products than that. Otherwise products are taken from the
+ * narrowest range, or from whole catalog when query has no ranges, filtered first and then sorted,
+ * keeping only {@code offset + limit} best products when query has limit.
+ * <p>
+ * Next page of query ordered by index starts in the index right after the last product of previous page.
+ * <p>
+ * Best before date of drinks is always today, so drinks are kept apart from the food date index.
+ * <p>
+ * Indexes are published together as immutable {@link Snapshot} of the catalog, queries read one snapshot
+ * without any lock, so they see the catalog as it was at one moment and never wait for writers.
+ * Writers do not lock each other out either: each change copies only paths to the changed products
+ * into a new snapshot and publishes it by compare and set, and is applied again to the newer snapshot
+ * when another writer published first.
+ * <p>
+ * Indexes hold product objects, they may be turned off for catalog kept in {@link ProductColumns},
+ * then every query scans whole catalog under catalog read lock.
+ * @author mserge
+ * @version 1
+ */
+class ProductQueryEngine {
+    private final boolean indexed;
+    /**
+     * latest snapshot, {@code null} when catalog is not indexed
+     */
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    /**
+     * {@code Snapshot} is catalog at one moment: products by id and by each indexed key
+     */
+    static class Snapshot {
+        private final SortedIndex<Integer> products;
+        private final SortedIndex<BigDecimal> prices;
+        private final SortedIndex<Rating> ratings;
+        private final SortedIndex<LocalDate> bestBefore;
+        private final SortedIndex<Integer> drinks;
+
+        private Snapshot(SortedIndex<Integer> products, SortedIndex<BigDecimal> prices, SortedIndex<Rating> ratings,
+                         SortedIndex<LocalDate> bestBefore, SortedIndex<Integer> drinks) {
+            this.products = products;
+            this.prices = prices;
+            this.ratings = ratings;
+            this.bestBefore = bestBefore;
+            this.drinks = drinks;
+        }
+
+        /**
+         * @return product with given id or {@code null}
+         */
+        Product get(int id) {
+            return products.get(id, id);
+        }
+
+        int size() {
+            return products.size();
+        }
+    }
+
+    /**
+     * @param indexed {@code false} to scan catalog instead of keeping indexes
+     */
+    ProductQueryEngine(boolean indexed) {
+        this.indexed = indexed;
+        if (indexed) {
+            snapshot.set(new Snapshot(new SortedIndex<>(Product::getId), new SortedIndex<>(Product::getPrice),
+                    new SortedIndex<>(Product::getRating), new SortedIndex<>(Product::getBestBefore),
+                    new SortedIndex<>(Product::getId)));
+        }
+    }
+
+    /**
+     * @return latest snapshot of the catalog, {@code null} when catalog is not indexed
+     */
+    Snapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * @param product product not in catalog yet
+     */
+    void add(Product product) {
+        if (!indexed) {
+            return;
+        }
+        boolean food = product instanceof Food;
+        publish(current -> new Snapshot(current.products.add(product), current.prices.add(product),
+                current.ratings.add(product),
+                food ? current.bestBefore.add(product) : current.bestBefore,
+                food ? current.drinks : current.drinks.add(product)));
+    }
+
+    /**
+     * only rating of product changes
+     */
+    void rerate(Product oldProduct, Product newProduct) {
+        if (!indexed) {
+            return;
+        }
+        boolean food = newProduct instanceof Food;
+        publish(current -> new Snapshot(current.products.update(oldProduct, newProduct),
+                current.prices.update(oldProduct, newProduct), current.ratings.update(oldProduct, newProduct),
+                food ? current.bestBefore.update(oldProduct, newProduct) : current.bestBefore,
+                food ? current.drinks : current.drinks.update(oldProduct, newProduct)));
+    }
+
+    /**
+     * replaces all indexes, caller holds catalog write lock, so no other writer publishes meanwhile
+     */
+    void reset(Collection<Product> products) {
+        if (!indexed) {
+            return;
+        }
+        List<Product> food = products.stream().filter(product -> product instanceof Food).collect(Collectors.toList());
+        List<Product> drinks = products.stream().filter(product -> !(product instanceof Food)).collect(Collectors.toList());
+        Snapshot current = snapshot.get();
+        snapshot.set(new Snapshot(current.products.build(products), current.prices.build(products),
+                current.ratings.build(products), current.bestBefore.build(food), current.drinks.build(drinks)));
+    }
+
+    /**
+     * applies change to the latest snapshot and publishes result unless another writer published first,
+     * then applies it again to the snapshot of that writer
+     */
+    private void publish(UnaryOperator<Snapshot> change) {
+        Snapshot current;
+        do {
+            current = snapshot.get();
+        } while (!snapshot.compareAndSet(current, change.apply(current)));
+    }
+
+    /**
+     * Runs query on catalog not indexed, caller holds catalog read lock
+     */
+    List<Product> execute(ProductQuery query, ProductIndex primary) {
+        if (query.limit == 0) {
+            return Collections.emptyList();
+        }
+        return select(primary.values().stream(), query, false);
+    }
+
+    /**
+     * Runs query on snapshot, no lock is needed
+     */
+    List<Product> execute(ProductQuery query, Snapshot snapshot) {
+        if (query.limit == 0) {
+            return Collections.emptyList();
+        }
+        long wanted = Math.min(Integer.MAX_VALUE, (long) query.offset + query.limit);
+        LocalDate today = LocalDate.now();
+        int narrowest = snapshot.size();
+        ProductQuery.Order narrowestKey = null;
+        if (query.minPrice != null || query.maxPrice != null) {
+            int count = snapshot.prices.count(query.minPrice, query.maxPrice, narrowest);
+            if (count < narrowest || narrowestKey == null) {
+                narrowest = count;
+                narrowestKey = ProductQuery.Order.PRICE;
+            }
+        }
+        if (query.minRating != null || query.maxRating != null) {
+            int count = snapshot.ratings.count(query.minRating, query.maxRating, narrowest);
+            if (count < narrowest || narrowestKey == null) {
+                narrowest = count;
+                narrowestKey = ProductQuery.Order.RATING;
+            }
+        }
+        if (query.minBestBefore != null || query.maxBestBefore != null) {
+            int count = snapshot.bestBefore.count(query.minBestBefore, query.maxBestBefore, narrowest)
+                    + (inRange(today, query.minBestBefore, query.maxBestBefore) ? snapshot.drinks.size() : 0);
+            if (count < narrowest || narrowestKey == null) {
+                narrowest = count;
+                narrowestKey = ProductQuery.Order.BEST_BEFORE;
+            }
+        }
+        boolean walk = query.sorter == null && query.order != null
+                && (narrowestKey == null || narrowestKey == query.order || narrowest > wanted);
+        Stream<Product> candidates;
+        if (walk) {
+            candidates = walk(query.order, query, query.descending, snapshot, today);
+        } else if (narrowestKey != null) {
+            candidates = walk(narrowestKey, query, false, snapshot, today);
+        } else {
+            candidates = snapshot.products.products(null, null, false);
+        }
+        return select(candidates, query, walk);
+    }
+
+    /**
+     * filters candidates and sorts them unless they were walked in order of the query
+     */
+    private static List<Product> select(Stream<Product> candidates, ProductQuery query, boolean ordered) {
+        long wanted = Math.min(Integer.MAX_VALUE, (long) query.offset + query.limit);
+        if (query.hasCursor()) {
+            candidates = candidates.filter(query::isAfterCursor);
+        }
+        candidates = candidates.filter(query::matches);
+        Comparator<Product> comparator = query.comparator();
+        if (!ordered && comparator != null) {
+            candidates = query.limit == Integer.MAX_VALUE ? candidates.sorted(comparator) : top(candidates, comparator, (int) wanted);
+        }
+        return candidates.skip(query.offset).limit(query.limit).collect(Collectors.toList());
+    }
+
+    /**
+     * @return products in range of the key of the query ordered by the key,
+     * after the last product of previous page when query is ordered by the same key
+     */
+    private static Stream<Product> walk(ProductQuery.Order key, ProductQuery query, boolean descending,
+                                        Snapshot snapshot, LocalDate today) {
+        boolean continued = query.afterKey != null && key == query.order && descending == query.descending;
+        switch (key) {
+            case ID:
+                return snapshot.products.products(null, null, descending,
+                        continued ? (Integer) query.afterKey : null, query.afterId);
+            case PRICE:
+                return snapshot.prices.products(query.minPrice, query.maxPrice, descending,
+                        continued ? (BigDecimal) query.afterKey : null, query.afterId);
+            case RATING:
+                return snapshot.ratings.products(query.minRating, query.maxRating, descending,
+                        continued ? (Rating) query.afterKey : null, query.afterId);
+            case BEST_BEFORE:
+                return walkBestBefore(query.minBestBefore, query.maxBestBefore, descending,
+                        continued ? (LocalDate) query.afterKey : null, query.afterId, snapshot, today);
+            default:
+                throw new IllegalArgumentException("Order " + key + " has no index");
+        }
+    }
+
+    /**
+     * merges drinks into food dated today, products of today before the page start are dropped by caller
+     */
+    private static Stream<Product> walkBestBefore(LocalDate min, LocalDate max, boolean descending,
+                                                  LocalDate afterKey, int afterId, Snapshot snapshot, LocalDate today) {
+        SortedIndex<LocalDate> bestBefore = snapshot.bestBefore;
+        if (snapshot.drinks.isEmpty() || !inRange(today, min, max)) {
+            return bestBefore.products(min, max, descending, afterKey, afterId);
+        }
+        Stream<Product> before = bestBefore.products(min, today.minusDays(1), descending, afterKey, afterId);
+        Stream<Product> after = bestBefore.products(today.plusDays(1), max, descending, afterKey, afterId);
+        Stream<Product> dueToday = Stream.of(0).flatMap(ignored -> {
+            List<Product> due = bestBefore.products(today, today, false).collect(Collectors.toList());
+            snapshot.drinks.products(null, null, false).forEach(due::add);
+            Comparator<Product> byId = Comparator.comparingInt(Product::getId);
+            due.sort(descending ? byId.reversed() : byId);
+            return due.stream();
+        });
+        return descending
+                ? Stream.concat(Stream.concat(after, dueToday), before)
+                : Stream.concat(Stream.concat(before, dueToday), after);
+    }
+
+    /**
+     * keeps {@code k} first products by comparator in heap instead of sorting all of them
+     */
+    private static Stream<Product> top(Stream<Product> products, Comparator<Product> comparator, int k) {
+        PriorityQueue<Product> heap = new PriorityQueue<>(Math.min(k, 1024) + 1, comparator.reversed());
+        products.forEach(product -> {
+            if (heap.size() < k) {
+                heap.add(product);
+            } else if (comparator.compare(product, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(product);
+            }
+        });
+        List<Product> result = new ArrayList<>(heap);
+        result.sort(comparator);
+        return result.stream();
+    }
+
+    private static boolean inRange(LocalDate date, LocalDate min, LocalDate max) {
+        return (min == null || !date.isBefore(min)) && (max == null || !date.isAfter(max));
+    }
+}
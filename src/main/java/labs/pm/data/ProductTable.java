@@ -0,0 +1,169 @@
+package labs.pm.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@code ProductTable} is {@link ProductIndex} holding product objects.
+ * It is open addressing table with linear probing over plain {@code int} keys,
+ * so lookup costs O(1) and does not box ids.
+ * Reviews and rating aggregates of a product are kept in slots parallel to the product.
+ * All slot arrays are replaced together when the table grows, so readers without catalog lock
+ * always probe one consistent table.
+ * @author mserge
+ * @version 1
+ */
+class ProductTable implements ProductIndex {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * slot arrays of one capacity, product is set last, so its key, reviews and ratings are visible with it
+     */
+    private static class Slots {
+        private final int[] keys;
+        private final AtomicReferenceArray<Product> products;
+        private final Object[] reviews;
+        private final RatingSummary[] ratings;
+        private final int mask;
+
+        private Slots(int capacity) {
+            keys = new int[capacity];
+            products = new AtomicReferenceArray<>(capacity);
+            reviews = new Object[capacity];
+            ratings = new RatingSummary[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * @return slot of the id or {@code -1}
+         */
+        private int find(int id) {
+            int slot = mix(id) & mask;
+            while (products.get(slot) != null) {
+                if (keys[slot] == id) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void insert(int id, Product product, Object reviewList, RatingSummary summary) {
+            int slot = mix(id) & mask;
+            while (products.get(slot) != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = id;
+            reviews[slot] = reviewList;
+            ratings[slot] = summary;
+            products.set(slot, product);
+        }
+    }
+
+    private volatile Slots slots;
+    private int size;
+
+    ProductTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    ProductTable(int expectedSize) {
+        slots = new Slots(tableSizeFor(expectedSize));
+    }
+
+    @Override
+    public Product get(int id) {
+        Slots table = slots;
+        int slot = table.find(id);
+        return slot < 0 ? null : table.products.get(slot);
+    }
+
+    @Override
+    public Product put(Product product) {
+        Slots table = slots;
+        int slot = table.find(product.getId());
+        return slot < 0 ? null : table.products.getAndSet(slot, product);
+    }
+
+    @Override
+    public void add(Product product, List<Review> reviews, RatingSummary ratings) {
+        Slots table = slots;
+        if (size + 1 > table.products.length() * LOAD_FACTOR) {
+            table = rehash(table, table.products.length() << 1);
+        }
+        table.insert(product.getId(), product, reviews, ratings);
+        size++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Review> getReviews(int id) {
+        Slots table = slots;
+        int slot = table.find(id);
+        return slot < 0 ? null : (List<Review>) table.reviews[slot];
+    }
+
+    @Override
+    public RatingSummary getRatings(int id) {
+        Slots table = slots;
+        int slot = table.find(id);
+        return slot < 0 ? null : table.ratings[slot];
+    }
+
+    @Override
+    public List<Product> values() {
+        Slots table = slots;
+        List<Product> result = new ArrayList<>(size);
+        for (int i = 0; i < table.products.length(); i++) {
+            Product value = table.products.get(i);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        slots = new Slots(DEFAULT_CAPACITY);
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * fills new table before publishing it
+     */
+    private Slots rehash(Slots old, int capacity) {
+        Slots table = new Slots(capacity);
+        for (int i = 0; i < old.products.length(); i++) {
+            Product value = old.products.get(i);
+            if (value != null) {
+                table.insert(old.keys[i], value, old.reviews[i], old.ratings[i]);
+            }
+        }
+        slots = table;
+        return table;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * spreads sequential ids over the table, ids like 101, 102 ... would otherwise form long probe runs
+     */
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
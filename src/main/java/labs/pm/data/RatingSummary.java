@@ -0,0 +1,83 @@
+package labs.pm.data;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * {@code RatingSummary} keeps running histogram of review ratings of one product,
+ * so current rating is updated in O(1) on each review instead of averaging whole review list.
+ * Sum and count of ratings are derived from the histogram.
+ * Histogram is either owned by the summary or is a view of {@link #SIZE} counters of a shared column,
+ * such view is valid only until the column is reallocated.
+ * Not thread safe, guarded by the lock of the product stripe.
+ * @author mserge
+ * @version 1
+ */
+class RatingSummary {
+    /**
+     * number of counters of one histogram
+     */
+    static final int SIZE = Rating.values().length;
+
+    private final int[] histograms;
+    private final int offset;
+
+    RatingSummary() {
+        this(new int[SIZE], 0);
+    }
+
+    RatingSummary(Collection<Review> reviews) {
+        this();
+        reviews.forEach(review -> add(review.getRating()));
+    }
+
+    /**
+     * @param histograms column of histograms
+     * @param offset index of the first counter of the histogram in the column
+     */
+    RatingSummary(int[] histograms, int offset) {
+        this.histograms = histograms;
+        this.offset = offset;
+    }
+
+    void add(Rating rating) {
+        histograms[offset + rating.ordinal()]++;
+    }
+
+    /**
+     * @return average of review ratings rounded to whole stars, {@link Rating#NOT_RATED} when there are no reviews
+     */
+    Rating getRating() {
+        long sum = 0;
+        int count = 0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += (long) i * histograms[offset + i];
+            count += histograms[offset + i];
+        }
+        return count == 0 ? Rating.NOT_RATED : Rateable.convert((int) Math.round((double) sum / count));
+    }
+
+    int getCount() {
+        int count = 0;
+        for (int i = 0; i < SIZE; i++) {
+            count += histograms[offset + i];
+        }
+        return count;
+    }
+
+    Map<Rating, Integer> getDistribution() {
+        Map<Rating, Integer> distribution = new EnumMap<>(Rating.class);
+        for (Rating rating : Rating.values()) {
+            distribution.put(rating, histograms[offset + rating.ordinal()]);
+        }
+        return distribution;
+    }
+
+    /**
+     * copies histogram to {@link #SIZE} counters of a column
+     */
+    void copyTo(int[] histograms, int offset) {
+        System.arraycopy(this.histograms, this.offset, histograms, offset, SIZE);
+    }
+}
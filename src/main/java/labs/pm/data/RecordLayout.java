@@ -0,0 +1,143 @@
+package labs.pm.data;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code RecordLayout} is compiled {@link java.text.MessageFormat} style pattern like {@code {0},{1}}
+ * used to split a data line into argument fields without creating strings, and to render text lines
+ * of the pattern into a buffer.
+ * Only plain {@code {n}} arguments and literal text with {@code '} quoting are supported,
+ * fields are matched the same way as {@link java.text.MessageFormat#parse(String)} does:
+ * each field ends at first occurrence of the literal that follows it, field not followed by literal text
+ * takes rest of the line, so of adjacent arguments like {@code {0}{1}} the later ones are empty.
+ * Immutable and thread safe.
+ * @author mserge
+ * @version 1
+ */
+class RecordLayout {
+    /**
+     * literal text before each argument, element {@code arguments.length} is text after last argument
+     */
+    private final String[] literals;
+    private final int[] arguments;
+    private final int fields;
+
+    RecordLayout(String pattern) {
+        List<String> literalList = new ArrayList<>();
+        List<Integer> argumentList = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    literal.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == '{' && !quoted) {
+                int close = pattern.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unmatched braces in pattern " + pattern);
+                }
+                argumentList.add(Integer.parseInt(pattern.substring(i + 1, close).trim()));
+                literalList.add(literal.toString());
+                literal.setLength(0);
+                i = close;
+            } else {
+                literal.append(c);
+            }
+        }
+        literalList.add(literal.toString());
+        literals = literalList.toArray(new String[0]);
+        arguments = argumentList.stream().mapToInt(Integer::intValue).toArray();
+        fields = arguments.length == 0 ? 0 : Arrays.stream(arguments).max().getAsInt() + 1;
+    }
+
+    /**
+     * appends argument of the value to the buffer
+     */
+    interface ArgumentWriter<T> {
+        void append(StringBuilder out, T value, int argument);
+    }
+
+    /**
+     * Appends literal text of the pattern and arguments of the value, same as {@link java.text.MessageFormat#format}
+     * with arguments rendered by the writer
+     */
+    <T> void render(StringBuilder out, T value, ArgumentWriter<T> writer) {
+        for (int i = 0; i < arguments.length; i++) {
+            out.append(literals[i]);
+            writer.append(out, value, arguments[i]);
+        }
+        out.append(literals[arguments.length]);
+    }
+
+    /**
+     * @return size of bounds array expected by {@link #split(CharSequence, int[])}
+     */
+    int boundsLength() {
+        return fields * 2;
+    }
+
+    /**
+     * @param text data line
+     * @param bounds receives start and end offsets of argument {@code n} at {@code 2n} and {@code 2n+1},
+     *               arguments missing from the pattern are set to {@code -1}
+     * @throws ParseException when line does not match literal text of the pattern or nothing of it is matched
+     */
+    void split(CharSequence text, int[] bounds) throws ParseException {
+        Arrays.fill(bounds, -1);
+        int position = match(text, 0, literals[0]);
+        for (int i = 0; i < arguments.length; i++) {
+            String next = literals[i + 1];
+            int end;
+            if (next.isEmpty()) {
+                end = text.length();
+            } else {
+                end = indexOf(text, next, position);
+                if (end < 0) {
+                    throw new ParseException("Expected '" + next + "'", position);
+                }
+            }
+            bounds[arguments[i] * 2] = position;
+            bounds[arguments[i] * 2 + 1] = end;
+            position = end + next.length();
+        }
+        if (position == 0) {
+            throw new ParseException("Empty line", 0);
+        }
+    }
+
+    private static int match(CharSequence text, int position, String literal) throws ParseException {
+        if (!regionMatches(text, position, literal)) {
+            throw new ParseException("Expected '" + literal + "'", position);
+        }
+        return position + literal.length();
+    }
+
+    private static int indexOf(CharSequence text, String literal, int from) {
+        for (int i = from, last = text.length() - literal.length(); i <= last; i++) {
+            if (regionMatches(text, i, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence text, int position, String literal) {
+        if (position + literal.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (text.charAt(position + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,127 @@
+package labs.pm.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code ReportCache} keeps rendered report bodies by product id and language tag.
+ * Each body remembers product version and day it was rendered for, so body of older version
+ * or rendered on another day is a miss. Least recently used bodies are evicted
+ * when total size of bodies exceeds the limit.
+ * @author mserge
+ * @version 1
+ */
+class ReportCache {
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Body> bodies = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<String> languageTags = ConcurrentHashMap.newKeySet();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long bytes;
+
+    /**
+     * @param maxBytes limit of total size of cached bodies, 0 disables the cache
+     */
+    ReportCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return cached body or {@code null} when it is missing or outdated
+     */
+    byte[] get(int id, String languageTag, long version, long day) {
+        Body body;
+        synchronized (this) {
+            body = bodies.get(new Key(id, languageTag));
+        }
+        if (body != null && body.version == version && body.day == day) {
+            hits.increment();
+            return body.content;
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(int id, String languageTag, long version, long day, byte[] content) {
+        if (content.length > maxBytes) {
+            return;
+        }
+        languageTags.add(languageTag);
+        synchronized (this) {
+            Body old = bodies.put(new Key(id, languageTag), new Body(version, day, content));
+            bytes += content.length - (old == null ? 0 : old.content.length);
+            Iterator<Body> eldest = bodies.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().content.length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * drops bodies of the product in all languages
+     */
+    void invalidate(int id) {
+        synchronized (this) {
+            for (String languageTag : languageTags) {
+                Body old = bodies.remove(new Key(id, languageTag));
+                if (old != null) {
+                    bytes -= old.content.length;
+                }
+            }
+        }
+    }
+
+    synchronized void clear() {
+        bodies.clear();
+        bytes = 0;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private static class Key {
+        private final int id;
+        private final String languageTag;
+
+        private Key(int id, String languageTag) {
+            this.id = id;
+            this.languageTag = languageTag;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o instanceof Key) {
+                Key key = (Key) o;
+                return id == key.id && languageTag.equals(key.languageTag);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id + languageTag.hashCode();
+        }
+    }
+
+    private static class Body {
+        private final long version;
+        private final long day;
+        private final byte[] content;
+
+        private Body(long version, long day, byte[] content) {
+            this.version = version;
+            this.day = day;
+            this.content = content;
+        }
+    }
+}
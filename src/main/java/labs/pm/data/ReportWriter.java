@@ -0,0 +1,147 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code ReportWriter} writes rendered reports to files on its own thread.
+ * Requests wait in bounded queue, callers block when queue is full.
+ * Writer takes up to {@code batchSize} queued reports at once and writes them through
+ * {@link FileChannel} from one reused direct buffer.
+ * Reports submitted after close are not queued, their futures fail at once.
+ * @author mserge
+ * @version 1
+ */
+class ReportWriter implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ReportWriter.class.getName());
+    private static final Request STOP = new Request(null, null);
+
+    private final BlockingQueue<Request> queue;
+    private final int batchSize;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private static class Request {
+        private final Path file;
+        private final byte[] content;
+        private final CompletableFuture<Path> done = new CompletableFuture<>();
+
+        private Request(Path file, byte[] content) {
+            this.file = file;
+            this.content = content;
+        }
+    }
+
+    /**
+     * @param capacity number of reports waiting to be written before callers block
+     * @param batchSize number of reports taken from queue at once
+     */
+    ReportWriter(int capacity, int batchSize) {
+        queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        writer = new Thread(this::writeLoop, "report-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param file report file, replaced if exists
+     * @param content report body
+     * @return completed with the file when it is written,
+     * completed exceptionally with {@link IllegalStateException} when writer is closed
+     * @throws InterruptedException when interrupted while waiting for space in queue
+     */
+    CompletableFuture<Path> submit(Path file, byte[] content) throws InterruptedException {
+        Request request = new Request(file, content);
+        if (closed) {
+            reject(request);
+            return request.done;
+        }
+        queue.put(request);
+        if (closed && queue.remove(request)) {
+            // queued behind STOP, writer has left or drains the queue without this request
+            reject(request);
+        }
+        return request.done;
+    }
+
+    /**
+     * Writes queued reports and stops writer thread
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        List<Request> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                boolean stopped = false;
+                for (Request request : batch) {
+                    if (request == STOP || stopped) {
+                        stopped = true;
+                        reject(request);
+                        continue;
+                    }
+                    try {
+                        write(request.file, request.content, buffer);
+                        request.done.complete(request.file);
+                    } catch (IOException e) {
+                        request.done.completeExceptionally(e);
+                    }
+                }
+                if (stopped) {
+                    Request late;
+                    while ((late = queue.poll()) != null) {
+                        reject(late);
+                    }
+                    return;
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "Report writer interrupted");
+        }
+    }
+
+    private static void reject(Request request) {
+        request.done.completeExceptionally(new IllegalStateException("Report writer is closed"));
+    }
+
+    private static void write(Path file, byte[] content, ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int offset = 0; offset < content.length; offset += buffer.capacity()) {
+                buffer.clear();
+                buffer.put(content, offset, Math.min(buffer.capacity(), content.length - offset));
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * {@code ResourceFormatter} renders products, reviews and prices of one locale
+ * by {@code product} and {@code review} patterns of {@code resources} bundle.
+ * Patterns are compiled once into {@link RecordLayout}, prices are rendered by the rules
+ * of currency {@link DecimalFormat} of the locale taken apart once, so rendering appends to caller's buffer
+ * without parsing patterns and without sharing {@link NumberFormat}, which is not thread safe.
+ * Currency format which cannot be taken apart is cloned per thread.
+ * Immutable and thread safe.
+ * @author mserge
+ * @version 1
+ */
+class ResourceFormatter {
+    private final ResourceBundle resourceBundle;
+    private final DateTimeFormatter dateTimeFormatter;
+    private final RecordLayout productLayout;
+    private final RecordLayout reviewLayout;
+    private final RecordLayout.ArgumentWriter<Product> productArguments = this::appendProductArgument;
+    private final RecordLayout.ArgumentWriter<Review> reviewArguments = ResourceFormatter::appendReviewArgument;
+    private final ThreadLocal<NumberFormat> numberFormat;
+    private final String positivePrefix;
+    private final String positiveSuffix;
+    private final String negativePrefix;
+    private final String negativeSuffix;
+    private final char groupingSeparator;
+    private final int groupingSize;
+    private final char decimalSeparator;
+    private final char zeroDigit;
+    private final int minimumFractionDigits;
+    private final int maximumFractionDigits;
+    private final RoundingMode roundingMode;
+
+    ResourceFormatter(Locale locale) {
+        resourceBundle = ResourceBundle.getBundle("resources", locale);
+        dateTimeFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
+        productLayout = new RecordLayout(getText("product"));
+        reviewLayout = new RecordLayout(getText("review"));
+        NumberFormat currency = NumberFormat.getCurrencyInstance(locale);
+        if (currency instanceof DecimalFormat && isPlain((DecimalFormat) currency)) {
+            DecimalFormat format = (DecimalFormat) currency;
+            DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+            numberFormat = null;
+            positivePrefix = format.getPositivePrefix();
+            positiveSuffix = format.getPositiveSuffix();
+            negativePrefix = format.getNegativePrefix();
+            negativeSuffix = format.getNegativeSuffix();
+            groupingSeparator = symbols.getMonetaryGroupingSeparator();
+            groupingSize = format.isGroupingUsed() ? format.getGroupingSize() : 0;
+            decimalSeparator = symbols.getMonetaryDecimalSeparator();
+            zeroDigit = symbols.getZeroDigit();
+            minimumFractionDigits = format.getMinimumFractionDigits();
+            maximumFractionDigits = format.getMaximumFractionDigits();
+            roundingMode = format.getRoundingMode();
+        } else {
+            numberFormat = ThreadLocal.withInitial(() -> (NumberFormat) currency.clone());
+            positivePrefix = positiveSuffix = negativePrefix = negativeSuffix = "";
+            groupingSeparator = decimalSeparator = zeroDigit = 0;
+            groupingSize = minimumFractionDigits = maximumFractionDigits = 0;
+            roundingMode = RoundingMode.HALF_EVEN;
+        }
+    }
+
+    String getText(String key) {
+        return resourceBundle.getString(key);
+    }
+
+    void appendProduct(StringBuilder out, Product product) {
+        productLayout.render(out, product, productArguments);
+    }
+
+    void appendReview(StringBuilder out, Review review) {
+        reviewLayout.render(out, review, reviewArguments);
+    }
+
+    String formatPrice(BigDecimal price) {
+        StringBuilder out = new StringBuilder(16);
+        appendPrice(out, price);
+        return out.toString();
+    }
+
+    void appendPrice(StringBuilder out, BigDecimal price) {
+        if (numberFormat != null) {
+            out.append(numberFormat.get().format(price));
+            return;
+        }
+        BigDecimal rounded = price.setScale(maximumFractionDigits, roundingMode);
+        boolean negative = price.signum() < 0;
+        String digits = rounded.unscaledValue().abs().toString();
+        int integerDigits = digits.length() - maximumFractionDigits;
+        int fractionDigits = maximumFractionDigits;
+        while (fractionDigits > minimumFractionDigits && digit(digits, integerDigits + fractionDigits - 1) == '0') {
+            fractionDigits--;
+        }
+        out.append(negative ? negativePrefix : positivePrefix);
+        if (integerDigits <= 0) {
+            out.append(zeroDigit);
+        } else {
+            for (int i = 0; i < integerDigits; i++) {
+                if (i > 0 && groupingSize > 0 && (integerDigits - i) % groupingSize == 0) {
+                    out.append(groupingSeparator);
+                }
+                out.append((char) (zeroDigit + digits.charAt(i) - '0'));
+            }
+        }
+        if (fractionDigits > 0) {
+            out.append(decimalSeparator);
+            for (int i = integerDigits; i < integerDigits + fractionDigits; i++) {
+                out.append((char) (zeroDigit + digit(digits, i) - '0'));
+            }
+        }
+        out.append(negative ? negativeSuffix : positiveSuffix);
+    }
+
+    /**
+     * @return digit at the position, zeros before the first digit
+     */
+    private static char digit(String digits, int position) {
+        return position < 0 ? '0' : digits.charAt(position);
+    }
+
+    private void appendProductArgument(StringBuilder out, Product product, int argument) {
+        switch (argument) {
+            case 0:
+                out.append(product.getName());
+                break;
+            case 1:
+                appendPrice(out, product.getPrice());
+                break;
+            case 2:
+                out.append(product.getRating().getStars());
+                break;
+            case 3:
+                dateTimeFormatter.formatTo(product.getBestBefore(), out);
+                break;
+            default:
+                out.append('{').append(argument).append('}');
+        }
+    }
+
+    private static void appendReviewArgument(StringBuilder out, Review review, int argument) {
+        switch (argument) {
+            case 0:
+                out.append(review.getRating().getStars());
+                break;
+            case 1:
+                out.append(review.getComments());
+                break;
+            default:
+                out.append('{').append(argument).append('}');
+        }
+    }
+
+    /**
+     * @return {@code true} when format has only prefix, suffix, grouping and fraction digits rules
+     */
+    private static boolean isPlain(DecimalFormat format) {
+        return format.getMultiplier() == 1 && !format.isDecimalSeparatorAlwaysShown()
+                && format.getMinimumIntegerDigits() == 1 && format.getMaximumIntegerDigits() >= 309
+                && format.getMaximumFractionDigits() <= 340;
+    }
+}
@@ -0,0 +1,186 @@
+package labs.pm.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * {@code ReviewArena} stores review comments as UTF-8 bytes in large chunks, each distinct comment once.
+ * Review is packed into one {@code long}: rating ordinal in the top bits and reference of its comment,
+ * which is stripe of the arena, index of the chunk in the stripe and position of length prefixed comment in it.
+ * Comment longer than a chunk gets a chunk of its own.
+ * Distinct comments are found by open addressing table of references, so deduplication keeps no strings.
+ * <p>
+ * Comments are split into {@link #STRIPES} stripes by their hash, each stripe has its own table and chunks,
+ * so threads adding different comments rarely wait for each other.
+ * Appending is synchronized on the stripe, reading is not: reference reaches reader only through the lock
+ * of the product, which also publishes bytes written before it.
+ * @author mserge
+ * @version 1
+ */
+class ReviewArena {
+    private static final int STRIPES = 16;
+    private static final int STRIPE_BITS = 28;
+    private static final int CHUNK_SIZE = 1 << 18;
+    private static final int RATING_SHIFT = 60;
+    private static final int STRIPE_SHIFT = 56;
+    private static final long REFERENCE_MASK = (1L << RATING_SHIFT) - 1;
+    private static final long CHUNK_MASK = (1L << (STRIPE_SHIFT - 32)) - 1;
+    private static final long NULL_COMMENT = REFERENCE_MASK;
+    private static final int LENGTH_BYTES = 4;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    ReviewArena() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(i);
+        }
+    }
+
+    /**
+     * @return review packed into {@code long}, comment is added to arena unless it is already there
+     */
+    long pack(Rating rating, String comments) {
+        long reference = NULL_COMMENT;
+        if (comments != null) {
+            byte[] bytes = comments.getBytes(StandardCharsets.UTF_8);
+            int hash = mix(Arrays.hashCode(bytes));
+            reference = stripes[hash >>> STRIPE_BITS].intern(bytes, hash);
+        }
+        return ((long) rating.ordinal() << RATING_SHIFT) | reference;
+    }
+
+    Review review(long packed) {
+        return new Review(Rateable.convert((int) (packed >>> RATING_SHIFT)), comment(packed & REFERENCE_MASK));
+    }
+
+    /**
+     * @return number of distinct comments
+     */
+    int getDistinct() {
+        int distinct = 0;
+        for (Stripe stripe : stripes) {
+            distinct += stripe.getDistinct();
+        }
+        return distinct;
+    }
+
+    private String comment(long reference) {
+        if (reference == NULL_COMMENT) {
+            return null;
+        }
+        byte[] chunk = stripes[(int) (reference >>> STRIPE_SHIFT)].chunkOf(reference);
+        int offset = (int) reference;
+        int length = lengthAt(chunk, offset);
+        offset += LENGTH_BYTES;
+        return new String(chunk, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * comments of one range of hashes
+     */
+    private static class Stripe {
+        private final long stripeBits;
+        private volatile byte[][] chunks = new byte[4][];
+        private int chunkCount;
+        private int position = CHUNK_SIZE;
+        private long[] table = new long[64];
+        private int distinct;
+
+        private Stripe(int stripe) {
+            stripeBits = (long) stripe << STRIPE_SHIFT;
+        }
+
+        private synchronized int getDistinct() {
+            return distinct;
+        }
+
+        private byte[] chunkOf(long reference) {
+            return chunks[(int) ((reference >>> 32) & CHUNK_MASK)];
+        }
+
+        /**
+         * @param hash mixed hash of the bytes
+         */
+        private synchronized long intern(byte[] bytes, int hash) {
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            long entry;
+            while ((entry = table[slot]) != 0) {
+                if (matches(entry - 1, bytes)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            long reference = append(bytes);
+            table[slot] = reference + 1;
+            if (++distinct > table.length / 2) {
+                rehash();
+            }
+            return reference;
+        }
+
+        private long append(byte[] bytes) {
+            int needed = bytes.length + LENGTH_BYTES;
+            if (needed > CHUNK_SIZE - position) {
+                if (chunkCount == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, chunkCount << 1);
+                }
+                chunks[chunkCount++] = new byte[Math.max(CHUNK_SIZE, needed)];
+                position = 0;
+            }
+            byte[] chunk = chunks[chunkCount - 1];
+            long reference = stripeBits | ((long) (chunkCount - 1) << 32) | position;
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                chunk[position++] = (byte) (bytes.length >>> shift);
+            }
+            System.arraycopy(bytes, 0, chunk, position, bytes.length);
+            position = Math.min(CHUNK_SIZE, position + bytes.length);
+            return reference;
+        }
+
+        private boolean matches(long reference, byte[] bytes) {
+            byte[] chunk = chunkOf(reference);
+            int offset = (int) reference;
+            int length = lengthAt(chunk, offset);
+            offset += LENGTH_BYTES;
+            return length == bytes.length && Arrays.equals(chunk, offset, offset + length, bytes, 0, length);
+        }
+
+        private void rehash() {
+            long[] old = table;
+            table = new long[old.length << 1];
+            int mask = table.length - 1;
+            for (long entry : old) {
+                if (entry != 0) {
+                    int slot = mix(hashOf(entry - 1)) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = entry;
+                }
+            }
+        }
+
+        private int hashOf(long reference) {
+            byte[] chunk = chunkOf(reference);
+            int offset = (int) reference;
+            int length = lengthAt(chunk, offset);
+            offset += LENGTH_BYTES;
+            int hash = 1;
+            for (int i = offset; i < offset + length; i++) {
+                hash = 31 * hash + chunk[i];
+            }
+            return hash;
+        }
+    }
+
+    private static int lengthAt(byte[] chunk, int offset) {
+        return (chunk[offset] & 0xFF) << 24 | (chunk[offset + 1] & 0xFF) << 16
+                | (chunk[offset + 2] & 0xFF) << 8 | (chunk[offset + 3] & 0xFF);
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
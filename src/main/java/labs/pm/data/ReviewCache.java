@@ -0,0 +1,60 @@
+package labs.pm.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * {@code ReviewCache} keeps reviews read from review files by product id for {@link LazyReviewList}.
+ * Least recently used lists are evicted when total number of cached reviews exceeds the limit,
+ * evicted list is read from the file again on next use.
+ * Lists are read outside of the cache lock, when two threads read the same list the first one is kept.
+ * @author mserge
+ * @version 1
+ */
+class ReviewCache {
+    private final long maxReviews;
+    private final LinkedHashMap<Integer, List<Review>> lists = new LinkedHashMap<>(64, 0.75f, true);
+    private long reviews;
+
+    /**
+     * @param maxReviews limit of total number of cached reviews, the last read list is kept even when it is larger
+     */
+    ReviewCache(long maxReviews) {
+        this.maxReviews = maxReviews;
+    }
+
+    /**
+     * @param loader reads reviews of the product when they are not cached
+     * @return cached or just read reviews of the product
+     */
+    List<Review> get(int id, Supplier<List<Review>> loader) {
+        List<Review> list;
+        synchronized (this) {
+            list = lists.get(id);
+        }
+        if (list != null) {
+            return list;
+        }
+        List<Review> loaded = loader.get();
+        synchronized (this) {
+            list = lists.putIfAbsent(id, loaded);
+            if (list != null) {
+                return list;
+            }
+            reviews += loaded.size();
+            Iterator<List<Review>> eldest = lists.values().iterator();
+            while (reviews > maxReviews && lists.size() > 1) {
+                reviews -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+        return loaded;
+    }
+
+    synchronized void clear() {
+        lists.clear();
+        reviews = 0;
+    }
+}
@@ -0,0 +1,63 @@
+package labs.pm.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * {@code ReviewList} is list of reviews of one product kept as packed {@code long}s of {@link ReviewArena}.
+ * {@link Review} objects are created only when list is read, so they live as long as the report using them.
+ * List is not thread safe, it is guarded by the lock of its product.
+ * @author mserge
+ * @version 1
+ */
+class ReviewList extends AbstractList<Review> implements RandomAccess {
+    private static final long[] EMPTY = new long[0];
+
+    private final ReviewArena arena;
+    private long[] reviews = EMPTY;
+    private int size;
+
+    ReviewList(ReviewArena arena) {
+        this.arena = arena;
+    }
+
+    @Override
+    public Review get(int index) {
+        Objects.checkIndex(index, size);
+        return arena.review(reviews[index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(Review review) {
+        if (size == reviews.length) {
+            reviews = Arrays.copyOf(reviews, Math.max(4, size + (size >> 1)));
+        }
+        reviews[size++] = arena.pack(review.getRating(), review.getComments());
+        modCount++;
+        return true;
+    }
+
+    /**
+     * @return list of the same reviews sharing the arena, reviews added later are not in it
+     */
+    ReviewList copy() {
+        ReviewList copy = new ReviewList(arena);
+        copy.reviews = Arrays.copyOf(reviews, size);
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public void clear() {
+        reviews = EMPTY;
+        size = 0;
+        modCount++;
+    }
+}
@@ -0,0 +1,315 @@
+package labs.pm.data;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@code SortedIndex} is secondary index of products ordered by a key of the product and then by id.
+ * <p>
+ * Index is immutable: adding, removing or replacing product returns new index sharing all nodes
+ * but the path to the changed one, so older index stays valid for readers still using it.
+ * Nodes form treap whose priority is hash of product id, so it is balanced on average and
+ * its shape depends only on products it holds. Change costs O(log n) new nodes,
+ * index of whole catalog is built in O(n) after sorting.
+ * @author mserge
+ * @version 1
+ */
+class SortedIndex<K extends Comparable<? super K>> {
+    private final Function<Product, K> key;
+    private final Node root;
+    private final int size;
+
+    /**
+     * Fields are set only while index is built, index is published after that and never changed
+     */
+    private static class Node {
+        private final Product product;
+        private Node left;
+        private Node right;
+
+        private Node(Product product, Node left, Node right) {
+            this.product = product;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    /**
+     * @param key key of the product, must not change while product is indexed unless {@link #update} is called
+     */
+    SortedIndex(Function<Product, K> key) {
+        this(key, null, 0);
+    }
+
+    private SortedIndex(Function<Product, K> key, Node root, int size) {
+        this.key = key;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param products products with distinct ids
+     * @return index of the products
+     */
+    SortedIndex<K> build(Collection<Product> products) {
+        Comparator<Product> order = Comparator.comparing(key).thenComparingInt(Product::getId);
+        List<Product> sorted = products.stream().sorted(order).collect(Collectors.toList());
+        Deque<Node> spine = new ArrayDeque<>();
+        for (Product product : sorted) {
+            Node node = new Node(product, null, null);
+            Node last = null;
+            while (!spine.isEmpty() && priority(spine.peek()) < priority(node)) {
+                last = spine.pop();
+            }
+            node.left = last;
+            if (!spine.isEmpty()) {
+                spine.peek().right = node;
+            }
+            spine.push(node);
+        }
+        return new SortedIndex<>(key, spine.peekLast(), sorted.size());
+    }
+
+    /**
+     * @param product product not in index yet
+     */
+    SortedIndex<K> add(Product product) {
+        return new SortedIndex<>(key, insert(root, product, key.apply(product)), size + 1);
+    }
+
+    SortedIndex<K> remove(Product product) {
+        return new SortedIndex<>(key, delete(root, key.apply(product), product.getId()), size - 1);
+    }
+
+    /**
+     * replaces old product with new product of the same id, product is moved when its key changed
+     */
+    SortedIndex<K> update(Product oldProduct, Product newProduct) {
+        K newKey = key.apply(newProduct);
+        if (key.apply(oldProduct).compareTo(newKey) != 0) {
+            return remove(oldProduct).add(newProduct);
+        }
+        return new SortedIndex<>(key, insert(root, newProduct, newKey), size);
+    }
+
+    SortedIndex<K> clear() {
+        return new SortedIndex<>(key);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return product with given key and id or {@code null}
+     */
+    Product get(K productKey, int id) {
+        Node node = root;
+        while (node != null) {
+            int result = compare(productKey, id, node.product);
+            if (result == 0) {
+                return node.product;
+            }
+            node = result < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * @param from lowest key, {@code null} for no lower bound
+     * @param to highest key, {@code null} for no upper bound
+     * @param cap counting stops at this number
+     * @return number of products with keys in range, at most {@code cap}
+     */
+    int count(K from, K to, int cap) {
+        int count = 0;
+        Iterator<Product> products = new Range(from, Integer.MIN_VALUE, true, to, Integer.MAX_VALUE, true, false);
+        while (count < cap && products.hasNext()) {
+            products.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return products with keys in range ordered by key and id
+     */
+    Stream<Product> products(K from, K to, boolean descending) {
+        return products(from, to, descending, null, 0);
+    }
+
+    /**
+     * @param afterKey key of the product to continue after in given direction, {@code null} to start from the first product
+     * @param afterId id of the product to continue after
+     * @return products with keys in range ordered by key and id
+     */
+    Stream<Product> products(K from, K to, boolean descending, K afterKey, int afterId) {
+        Range range;
+        if (afterKey != null && !descending && (from == null || compare(afterKey, afterId, from, Integer.MIN_VALUE) >= 0)) {
+            range = new Range(afterKey, afterId, false, to, Integer.MAX_VALUE, true, false);
+        } else if (afterKey != null && descending && (to == null || compare(afterKey, afterId, to, Integer.MAX_VALUE) <= 0)) {
+            range = new Range(from, Integer.MIN_VALUE, true, afterKey, afterId, false, true);
+        } else {
+            range = new Range(from, Integer.MIN_VALUE, true, to, Integer.MAX_VALUE, true, descending);
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(range,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * walks products between bounds in one direction, keeping path to the next product on stack
+     */
+    private class Range implements Iterator<Product> {
+        private final Deque<Node> path = new ArrayDeque<>();
+        private final K endKey;
+        private final int endId;
+        private final boolean endInclusive;
+        private final boolean descending;
+
+        private Range(K lowKey, int lowId, boolean lowInclusive, K highKey, int highId, boolean highInclusive,
+                      boolean descending) {
+            this.descending = descending;
+            K startKey = descending ? highKey : lowKey;
+            int startId = descending ? highId : lowId;
+            boolean startInclusive = descending ? highInclusive : lowInclusive;
+            endKey = descending ? lowKey : highKey;
+            endId = descending ? lowId : highId;
+            endInclusive = descending ? lowInclusive : highInclusive;
+            Node node = root;
+            while (node != null) {
+                int result = startKey == null ? (descending ? 1 : -1) : compare(startKey, startId, node.product);
+                if (descending) {
+                    result = -result;
+                }
+                if (result < 0 || result == 0 && startInclusive) {
+                    path.push(node);
+                    node = first(node);
+                } else {
+                    node = next(node);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (path.isEmpty()) {
+                return false;
+            }
+            if (endKey == null) {
+                return true;
+            }
+            int result = compare(endKey, endId, path.peek().product);
+            if (descending) {
+                result = -result;
+            }
+            if (result > 0 || result == 0 && endInclusive) {
+                return true;
+            }
+            path.clear();
+            return false;
+        }
+
+        @Override
+        public Product next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = path.pop();
+            for (Node child = next(node); child != null; child = first(child)) {
+                path.push(child);
+            }
+            return node.product;
+        }
+
+        private Node first(Node node) {
+            return descending ? node.right : node.left;
+        }
+
+        private Node next(Node node) {
+            return descending ? node.left : node.right;
+        }
+    }
+
+    private Node insert(Node node, Product product, K productKey) {
+        if (node == null) {
+            return new Node(product, null, null);
+        }
+        int result = compare(productKey, product.getId(), node.product);
+        if (result == 0) {
+            return new Node(product, node.left, node.right);
+        }
+        if (result < 0) {
+            Node left = insert(node.left, product, productKey);
+            return priority(left) > priority(node)
+                    ? new Node(left.product, left.left, new Node(node.product, left.right, node.right))
+                    : new Node(node.product, left, node.right);
+        }
+        Node right = insert(node.right, product, productKey);
+        return priority(right) > priority(node)
+                ? new Node(right.product, new Node(node.product, node.left, right.left), right.right)
+                : new Node(node.product, node.left, right);
+    }
+
+    private Node delete(Node node, K productKey, int id) {
+        if (node == null) {
+            return null;
+        }
+        int result = compare(productKey, id, node.product);
+        if (result == 0) {
+            return merge(node.left, node.right);
+        }
+        if (result < 0) {
+            Node left = delete(node.left, productKey, id);
+            return left == node.left ? node : new Node(node.product, left, node.right);
+        }
+        Node right = delete(node.right, productKey, id);
+        return right == node.right ? node : new Node(node.product, node.left, right);
+    }
+
+    /**
+     * @param low node whose products all precede products of {@code high}
+     */
+    private static Node merge(Node low, Node high) {
+        if (low == null) {
+            return high;
+        }
+        if (high == null) {
+            return low;
+        }
+        return priority(low) > priority(high)
+                ? new Node(low.product, low.left, merge(low.right, high))
+                : new Node(high.product, merge(low, high.left), high.right);
+    }
+
+    private int compare(K productKey, int id, Product product) {
+        return compare(productKey, id, key.apply(product), product.getId());
+    }
+
+    private int compare(K key1, int id1, K key2, int id2) {
+        int result = key1.compareTo(key2);
+        return result != 0 ? result : Integer.compare(id1, id2);
+    }
+
+    /**
+     * distinct for distinct ids, multiplication by odd number and xor shift are both reversible
+     */
+    private static int priority(Node node) {
+        int h = node.product.getId() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
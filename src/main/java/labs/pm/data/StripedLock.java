@@ -0,0 +1,72 @@
+package labs.pm.data;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@code StripedLock} spreads product ids over fixed set of read write locks,
+ * so operations on different products do not wait for each other.
+ * @author mserge
+ * @version 1
+ */
+class StripedLock {
+    private final Lock[] readLocks;
+    private final Lock[] writeLocks;
+    private final int mask;
+
+    /**
+     * @param stripes minimal number of stripes, rounded up to power of two
+     */
+    StripedLock(int stripes) {
+        this(stripes, UnaryOperator.identity(), UnaryOperator.identity());
+    }
+
+    /**
+     * @param stripes minimal number of stripes, rounded up to power of two
+     * @param readWrapper applied to read lock of each stripe, for example to time it
+     * @param writeWrapper applied to write lock of each stripe
+     */
+    StripedLock(int stripes, UnaryOperator<Lock> readWrapper, UnaryOperator<Lock> writeWrapper) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        readLocks = new Lock[size];
+        writeLocks = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+            readLocks[i] = readWrapper.apply(lock.readLock());
+            writeLocks[i] = writeWrapper.apply(lock.writeLock());
+        }
+        mask = size - 1;
+    }
+
+    Lock readLock(int id) {
+        return readLocks[stripe(id)];
+    }
+
+    Lock writeLock(int id) {
+        return writeLocks[stripe(id)];
+    }
+
+    /**
+     * locks write locks of all stripes in order, for changes of whole catalog
+     */
+    void lockAll() {
+        for (Lock lock : writeLocks) {
+            lock.lock();
+        }
+    }
+
+    void unlockAll() {
+        for (int i = writeLocks.length - 1; i >= 0; i--) {
+            writeLocks[i].unlock();
+        }
+    }
+
+    private int stripe(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
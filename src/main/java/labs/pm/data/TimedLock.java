@@ -0,0 +1,144 @@
+package labs.pm.data;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * {@code TimedLock} records how long threads wait for the lock and how long they hold it.
+ * Only sampled acquisitions are timed, others just take the lock without reading clock or thread state.
+ * Reentrant acquisitions are counted once, hold time is measured from the first lock to the last unlock.
+ * @author mserge
+ * @version 1
+ */
+class TimedLock implements Lock {
+    private final Lock lock;
+    private final LatencyHistogram waits;
+    private final LatencyHistogram holds;
+    private final int sampleMask;
+    /**
+     * hold depth and time of the first acquisition by current thread, kept only for sampled acquisitions
+     */
+    private final ThreadLocal<long[]> held = ThreadLocal.withInitial(() -> new long[2]);
+    /**
+     * number of threads holding the lock by sampled acquisition, {@link #held} is read only while it is positive
+     */
+    private final AtomicInteger sampledHolders = new AtomicInteger();
+
+    /**
+     * @param sampleRate one of this many acquisitions is timed, rounded up to power of two
+     */
+    TimedLock(Lock lock, LatencyHistogram waits, LatencyHistogram holds, int sampleRate) {
+        this.lock = lock;
+        this.waits = waits;
+        this.holds = holds;
+        int size = 1;
+        while (size < sampleRate) {
+            size <<= 1;
+        }
+        sampleMask = size - 1;
+    }
+
+    @Override
+    public void lock() {
+        if (sampled()) {
+            long start = System.nanoTime();
+            lock.lock();
+            acquired(start);
+        } else {
+            lock.lock();
+            reentered();
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (sampled()) {
+            long start = System.nanoTime();
+            lock.lockInterruptibly();
+            acquired(start);
+        } else {
+            lock.lockInterruptibly();
+            reentered();
+        }
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (sampled()) {
+            long start = System.nanoTime();
+            if (lock.tryLock()) {
+                acquired(start);
+                return true;
+            }
+            return false;
+        }
+        if (lock.tryLock()) {
+            reentered();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (sampled()) {
+            long start = System.nanoTime();
+            if (lock.tryLock(time, unit)) {
+                acquired(start);
+                return true;
+            }
+            return false;
+        }
+        if (lock.tryLock(time, unit)) {
+            reentered();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void unlock() {
+        if (sampledHolders.get() > 0) {
+            long[] state = held.get();
+            if (state[0] > 0 && --state[0] == 0) {
+                holds.record(System.nanoTime() - state[1]);
+                sampledHolders.decrementAndGet();
+            }
+        }
+        lock.unlock();
+    }
+
+    @Override
+    public Condition newCondition() {
+        return lock.newCondition();
+    }
+
+    private boolean sampled() {
+        return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+    }
+
+    private void acquired(long start) {
+        long[] state = held.get();
+        if (state[0]++ == 0) {
+            long now = System.nanoTime();
+            waits.record(now - start);
+            state[1] = now;
+            sampledHolders.incrementAndGet();
+        }
+    }
+
+    /**
+     * acquisition not sampled only deepens sampled hold of current thread
+     */
+    private void reentered() {
+        if (sampledHolders.get() > 0) {
+            long[] state = held.get();
+            if (state[0] > 0) {
+                state[0]++;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@code CatalogJournalTest} writes events to journal and replays its segments, and restarts managers
+ * from their journal.
+ * @author mserge
+ * @version 1
+ */
+class CatalogJournalTest {
+    private static final String FILE_PATTERN = "journal{0}.log";
+
+    @TempDir
+    Path folder;
+
+    /**
+     * records replayed events as text
+     */
+    private static class Recorder implements CatalogJournal.Listener {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void created(Product product) {
+            events.add("created " + product.getClass().getSimpleName() + " " + product.getId() + " " + product.getName()
+                    + " " + product.getPrice() + " " + product.getRating() + " " + product.getBestBefore());
+        }
+
+        @Override
+        public void reviewed(int id, Rating rating, String comments) {
+            events.add("reviewed " + id + " " + rating + " " + comments);
+        }
+    }
+
+    @Test
+    void replaysLoggedEventsInOrder() throws IOException {
+        Path journalFolder = folder.resolve("journal");
+        Food cake = new Food(102, "Cake", new BigDecimal("3.99"), Rating.NOT_RATED, LocalDate.now().plusDays(1));
+        try (CatalogJournal journal = new CatalogJournal(journalFolder, FILE_PATTERN, 1, 4, 5,
+                CatalogJournal.SyncPolicy.ALWAYS)) {
+            journal.logCreate(new Drink(101, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED));
+            journal.logReview(101, Rating.FOUR_STAR, "Nice hot cup of tea");
+            journal.logCreate(cake);
+            journal.logReview(102, Rating.FIVE_STAR, "\u041e\u0447\u0435\u043d\u044c \u0432\u043a\u0443\u0441\u043d\u043e");
+            journal.logReview(102, Rating.ONE_STAR, "");
+            journal.awaitDurable(journal.logReview(101, Rating.TWO_STAR, "Rather weak"));
+        }
+        Recorder recorder = new Recorder();
+        assertEquals(6, CatalogJournal.replay(journalFolder.resolve("journal1.log"), recorder));
+        assertEquals(List.of(
+                "created Drink 101 Tea 1.99 NOT_RATED " + LocalDate.now(),
+                "reviewed 101 FOUR_STAR Nice hot cup of tea",
+                "created Food 102 Cake 3.99 NOT_RATED " + cake.getBestBefore(),
+                "reviewed 102 FIVE_STAR \u041e\u0447\u0435\u043d\u044c \u0432\u043a\u0443\u0441\u043d\u043e",
+                "reviewed 102 ONE_STAR ",
+                "reviewed 101 TWO_STAR Rather weak"), recorder.events);
+    }
+
+    @Test
+    void startsNewSegmentAfterEventsQueuedBeforeRoll() throws IOException {
+        Path journalFolder = folder.resolve("journal");
+        long stamp;
+        try (CatalogJournal journal = new CatalogJournal(journalFolder, FILE_PATTERN, 10, 64, 5,
+                CatalogJournal.SyncPolicy.BATCH)) {
+            journal.logReview(101, Rating.ONE_STAR, "first");
+            stamp = journal.roll(5);
+            journal.logReview(101, Rating.TWO_STAR, "second");
+            journal.logReview(101, Rating.THREE_STAR, "third");
+        }
+        assertEquals(11, stamp);
+        assertEquals(List.of("journal10.log", "journal11.log"), segments(journalFolder));
+        Recorder first = new Recorder();
+        CatalogJournal.replay(journalFolder.resolve("journal10.log"), first);
+        assertEquals(List.of("reviewed 101 ONE_STAR first"), first.events);
+        Recorder second = new Recorder();
+        CatalogJournal.replay(journalFolder.resolve("journal11.log"), second);
+        assertEquals(List.of("reviewed 101 TWO_STAR second", "reviewed 101 THREE_STAR third"), second.events);
+    }
+
+    @Test
+    void stopsReplayAtTornRecord() throws IOException {
+        Path journalFolder = folder.resolve("journal");
+        try (CatalogJournal journal = new CatalogJournal(journalFolder, FILE_PATTERN, 1, 64, 5,
+                CatalogJournal.SyncPolicy.NEVER)) {
+            journal.logReview(101, Rating.ONE_STAR, "first");
+            journal.logReview(101, Rating.TWO_STAR, "second");
+        }
+        Path segment = journalFolder.resolve("journal1.log");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        Recorder recorder = new Recorder();
+        assertEquals(1, CatalogJournal.replay(segment, recorder));
+        assertEquals(List.of("reviewed 101 ONE_STAR first"), recorder.events);
+
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[12] ^= 1;
+        Files.write(segment, bytes);
+        assertEquals(0, CatalogJournal.replay(segment, new Recorder()));
+    }
+
+    @Test
+    void rejectsEventsAfterClose() throws IOException {
+        CatalogJournal journal = new CatalogJournal(folder.resolve("journal"), FILE_PATTERN, 1, 64, 5,
+                CatalogJournal.SyncPolicy.BATCH);
+        journal.close();
+        assertThrows(IllegalStateException.class, () -> journal.logReview(101, Rating.ONE_STAR, "late"));
+    }
+
+    @Test
+    void restoresCatalogFromJournal() throws ProductManagerException {
+        Map<String, String> settings = settings();
+        try (ProductManager pm = ProductManager.newInstance(settings)) {
+            pm.createProduct(101, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED);
+            pm.createProduct(102, "Cake", new BigDecimal("3.99"), Rating.NOT_RATED, LocalDate.now().plusDays(1));
+            pm.reviewProduct(101, Rating.FOUR_STAR, "Nice hot cup of tea");
+            pm.reviewProduct(101, Rating.TWO_STAR, "Rather weak");
+            pm.reviewProducts(List.of(new ProductReview(102, Rating.FIVE_STAR, "Very nice cake")));
+        }
+        try (ProductManager pm = ProductManager.newInstance(settings)) {
+            Product tea = pm.findProduct(101);
+            assertEquals("Tea", tea.getName());
+            assertEquals(Rating.THREE_STAR, tea.getRating());
+            assertEquals(2, pm.getReviewCount(101));
+            assertEquals(1, (int) pm.getRatingDistribution(101).get(Rating.FOUR_STAR));
+            Product cake = pm.findProduct(102);
+            assertEquals(Food.class, cake.getClass());
+            assertEquals(Rating.FIVE_STAR, cake.getRating());
+            assertEquals(1, pm.getReviewCount(102));
+        }
+    }
+
+    @Test
+    void appliesOnlyChangesAcceptedByJournal() throws ProductManagerException {
+        Map<String, String> settings = settings();
+        ProductManager pm = ProductManager.newInstance(settings);
+        pm.createProduct(101, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED);
+        pm.reviewProduct(101, Rating.FOUR_STAR, "Nice hot cup of tea");
+        pm.close();
+
+        assertNull(pm.createProduct(102, "Coffee", new BigDecimal("2.99"), Rating.NOT_RATED));
+        assertNull(pm.createProduct(103, "Cake", new BigDecimal("3.99"), Rating.NOT_RATED, LocalDate.now()));
+        assertNull(pm.reviewProduct(101, Rating.ONE_STAR, "Cold"));
+        assertThrows(IllegalStateException.class, () -> pm.reviewProducts(
+                List.of(new ProductReview(101, Rating.ONE_STAR, "Cold again"))));
+        assertEquals(List.of(101), ids(pm));
+        assertEquals(1, pm.getReviewCount(101));
+        assertEquals(Rating.FOUR_STAR, pm.findProduct(101).getRating());
+
+        try (ProductManager restarted = ProductManager.newInstance(settings)) {
+            assertEquals(List.of(101), ids(restarted));
+            assertEquals(1, restarted.getReviewCount(101));
+        }
+    }
+
+    @Test
+    void replaysOnlyChangesAfterRestore() {
+        Map<String, String> settings = new HashMap<>(settings());
+        settings.put("load.snapshot", "true");
+        try (ProductManager pm = ProductManager.newInstance(settings)) {
+            pm.createProduct(101, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED);
+            pm.dumpData();
+            pm.createProduct(102, "Coffee", new BigDecimal("2.99"), Rating.NOT_RATED);
+            pm.restoreData();
+            pm.createProduct(103, "Juice", new BigDecimal("2.49"), Rating.NOT_RATED);
+            assertEquals(List.of(101, 103), ids(pm));
+        }
+        try (ProductManager pm = ProductManager.newInstance(settings)) {
+            assertEquals(List.of(101, 103), ids(pm));
+        }
+    }
+
+    private static List<Integer> ids(ProductManager pm) {
+        return pm.findProducts(new ProductQuery().orderBy(ProductQuery.Order.ID)).stream().map(Product::getId)
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, String> settings() {
+        return Map.of(
+                "data.folder", folder.resolve("data").toString(),
+                "temp.folder", folder.resolve("temp").toString(),
+                "reports.folder", folder.toString(),
+                "journal.folder", folder.resolve("journal").toString(),
+                "journal.fsync", "always",
+                "load.snapshot", "false");
+    }
+
+    private static List<String> segments(Path journalFolder) throws IOException {
+        try (Stream<Path> files = Files.list(journalFolder)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+}
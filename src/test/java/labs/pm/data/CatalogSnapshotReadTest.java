@@ -0,0 +1,114 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * {@code CatalogSnapshotReadTest} checks that readers see published versions of the catalog:
+ * earlier versions of {@link SortedIndex} are not changed by later ones, listing is not changed
+ * by products created and reviewed while it is written.
+ * @author mserge
+ * @version 1
+ */
+class CatalogSnapshotReadTest {
+    @TempDir
+    Path folder;
+
+    private ProductManager pm;
+
+    @BeforeEach
+    void open() throws IOException {
+        pm = ProductManager.newInstance(Map.of(
+                "data.folder", Files.createDirectories(folder.resolve("data")).toString(),
+                "temp.folder", folder.resolve("temp").toString(),
+                "reports.folder", folder.toString(),
+                "journal.enabled", "false",
+                "load.snapshot", "false",
+                "query.indexes", "true",
+                "listing.chunk.size", "8"));
+        LocalDate today = LocalDate.now();
+        for (int id = 1; id <= 100; id++) {
+            BigDecimal price = BigDecimal.valueOf(100 + id % 7 * 50, 2);
+            if (id % 3 == 0) {
+                pm.createProduct(id, "Food " + id, price, Rateable.convert(id % 6), today.plusDays(id % 5 - 2));
+            } else {
+                pm.createProduct(id, "Drink " + id, price, Rateable.convert(id % 6));
+            }
+        }
+    }
+
+    @AfterEach
+    void close() {
+        pm.close();
+    }
+
+    @Test
+    void keepsEarlierVersionsOfIndex() {
+        List<Product> products = new ArrayList<>();
+        for (int id = 0; id < 50; id++) {
+            products.add(new Drink(id, "Drink " + id, BigDecimal.valueOf(id % 5), Rating.NOT_RATED));
+        }
+        SortedIndex<BigDecimal> first = new SortedIndex<>(Product::getPrice).build(products);
+        List<Product> firstListing = first.products(null, null, false).collect(Collectors.toList());
+
+        Product changed = products.get(10).applyRating(Rating.FIVE_STAR);
+        SortedIndex<BigDecimal> second = first.update(products.get(10), changed)
+                .remove(products.get(20))
+                .add(new Drink(50, "Drink 50", BigDecimal.ONE, Rating.NOT_RATED));
+
+        assertEquals(50, first.size());
+        assertEquals(firstListing, first.products(null, null, false).collect(Collectors.toList()));
+        assertSame(products.get(10), first.get(products.get(10).getPrice(), 10));
+        assertSame(products.get(20), first.get(products.get(20).getPrice(), 20));
+        assertNull(first.get(BigDecimal.ONE, 50));
+        assertEquals(50, second.size());
+        assertSame(changed, second.get(changed.getPrice(), 10));
+        assertNull(second.get(products.get(20).getPrice(), 20));
+    }
+
+    @Test
+    void listsCatalogAsItWasWhenListingStarted() throws IOException {
+        ProductQuery query = new ProductQuery().orderBy(ProductQuery.Order.RATING, true);
+        String before = listing(query);
+        StringWriter during = new StringWriter() {
+            private int writes;
+
+            @Override
+            public void write(char[] chars, int offset, int length) {
+                super.write(chars, offset, length);
+                if (writes++ % 10 == 0) {
+                    int id = 1000 + writes;
+                    pm.createProduct(id, "Drink " + id, BigDecimal.ONE, Rating.FIVE_STAR);
+                    pm.reviewProduct(1 + writes % 100, Rating.FIVE_STAR, "Reviewed while listed");
+                }
+            }
+        };
+        pm.writeProducts(query, "en-GB", during);
+        assertEquals(before, during.toString());
+        assertNotEquals(before, listing(query));
+    }
+
+    private String listing(ProductQuery query) throws IOException {
+        StringWriter out = new StringWriter();
+        pm.writeProducts(query, "en-GB", out);
+        return out.toString();
+    }
+}
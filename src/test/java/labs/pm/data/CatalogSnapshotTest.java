@@ -0,0 +1,111 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@code CatalogSnapshotTest} writes products with reviews to snapshot and checks they are read back unchanged.
+ * @author mserge
+ * @version 1
+ */
+class CatalogSnapshotTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void readsWrittenProductsAndReviews() throws IOException {
+        List<Product> products = List.of(
+                new Drink(101, "Tea", new BigDecimal("1.99"), Rating.FOUR_STAR),
+                new Food(102, "Cake", new BigDecimal("3.9"), Rating.NOT_RATED, LocalDate.of(2020, 10, 20)),
+                new Drink(-103, "\u041a\u043e\u0444\u0435", BigDecimal.ZERO, Rating.FIVE_STAR),
+                new Food(104, "", new BigDecimal("-12.50"), Rating.ONE_STAR, LocalDate.MIN),
+                new Drink(105, "Wine", new BigDecimal("1E+3"), Rating.TWO_STAR),
+                new Food(106, "Truffle", new BigDecimal(BigInteger.TEN.pow(400), 2), Rating.THREE_STAR, LocalDate.MAX));
+        List<List<Review>> reviews = List.of(
+                List.of(new Review(Rating.FOUR_STAR, "Nice hot cup of tea"), new Review(Rating.TWO_STAR, "Rather weak")),
+                List.of(),
+                List.of(new Review(Rating.FIVE_STAR, "\u041e\u0447\u0435\u043d\u044c \u0432\u043a\u0443\u0441\u043d\u043e"), new Review(Rating.NOT_RATED, "")),
+                List.of(new Review(Rating.ONE_STAR, "x".repeat(100_000))),
+                List.of(),
+                List.of(new Review(Rating.THREE_STAR, "Rich")));
+        Path file = folder.resolve("catalog.snapshot");
+        CatalogSnapshot.write(file, products, reviews::get);
+
+        Map<Product, List<Review>> snapshot = read(file);
+        assertEquals(products, new ArrayList<>(snapshot.keySet()));
+        int i = 0;
+        for (Map.Entry<Product, List<Review>> entry : snapshot.entrySet()) {
+            Product expected = products.get(i);
+            Product actual = entry.getKey();
+            assertEquals(expected.getClass(), actual.getClass());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getPrice(), actual.getPrice());
+            assertEquals(expected.getPrice().scale(), actual.getPrice().scale());
+            assertEquals(expected.getRating(), actual.getRating());
+            if (expected instanceof Food) {
+                assertEquals(expected.getBestBefore(), actual.getBestBefore());
+            }
+            assertReviews(reviews.get(i), entry.getValue());
+            i++;
+        }
+        assertFalse(Files.exists(folder.resolve("catalog.snapshot.part")));
+    }
+
+    @Test
+    void replacesPreviousSnapshot() throws IOException {
+        Path file = folder.resolve("catalog.snapshot");
+        List<Product> first = List.of(new Drink(101, "Tea", new BigDecimal("1.99"), Rating.FOUR_STAR));
+        CatalogSnapshot.write(file, first, index -> List.of(new Review(Rating.FOUR_STAR, "Nice")));
+        List<Product> second = List.of(new Drink(102, "Coffee", new BigDecimal("2.99"), Rating.NOT_RATED),
+                new Drink(103, "Juice", new BigDecimal("1.5"), Rating.NOT_RATED));
+        CatalogSnapshot.write(file, second, index -> List.of());
+
+        Map<Product, List<Review>> snapshot = read(file);
+        assertEquals(second, new ArrayList<>(snapshot.keySet()));
+        snapshot.values().forEach(list -> assertEquals(0, list.size()));
+    }
+
+    @Test
+    void rejectsDamagedSnapshot() throws IOException {
+        Path file = folder.resolve("catalog.snapshot");
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> read(file));
+
+        CatalogSnapshot.write(file, List.of(new Drink(101, "Tea", new BigDecimal("1.99"), Rating.FOUR_STAR)),
+                index -> List.of(new Review(Rating.FOUR_STAR, "Nice hot cup of tea")));
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+        assertThrows(IOException.class, () -> read(file));
+
+        bytes[5] = 9;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> read(file));
+    }
+
+    private static Map<Product, List<Review>> read(Path file) throws IOException {
+        return CatalogSnapshot.read(file, ArrayList::new);
+    }
+
+    private static void assertReviews(List<Review> expected, List<Review> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getRating(), actual.get(i).getRating());
+            assertEquals(expected.get(i).getComments(), actual.get(i).getComments());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.text.MessageFormat;
+import java.text.ParseException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@code DataParserTest} compares {@link DataParser} with parsing by {@link MessageFormat},
+ * which the parser replaced: valid lines give equal products and reviews, malformed lines fail in both.
+ * @author mserge
+ * @version 1
+ */
+class DataParserTest {
+    private static final String PRODUCT_FORMAT = "{0},{1},{2},{3},{4},{5}";
+    private static final String REVIEW_FORMAT = "{0},{1}";
+
+    private final DataParser parser = new DataParser(PRODUCT_FORMAT, REVIEW_FORMAT);
+
+    @Test
+    void parsesProductsAsMessageFormat() throws ParseException {
+        List<String> lines = List.of(
+                "D,101,Tea,1.99,0,2019-09-19",
+                "F,103,Cake,3.99,4,2020-10-20",
+                "D,104,Cookie,2.99,5,2019-09-19",
+                "F,105,Hot Chocolate,2.50,3,2021-01-01",
+                "D,106,Chocolate,0,1,2019-09-19",
+                "D,107,Water,10,2,2019-09-19",
+                "D,108,Juice,0.10,2,2019-09-19",
+                "D,109,Wine,12.000,2,2019-09-19",
+                "D,110,Rum,.5,2,2019-09-19",
+                "D,111,Gin,5.,2,2019-09-19",
+                "D,112,Brandy,-1.25,2,2019-09-19",
+                "D,113,Port,+7.5,2,2019-09-19",
+                "D,114,Sake,1e2,2,2019-09-19",
+                "D,115,Mead,0.0001,2,2019-09-19",
+                "D,116,Cider,12345678.9,2,2019-09-19",
+                "D,117,Ale,1.234567890123456789,2,2019-09-19",
+                "D,118,Kvass,0.1,9,2019-09-19",
+                "F,119,Bread,1.10,-1,2020-02-29",
+                "D,-121,Soda,1.00,3,2019-09-19");
+        for (String line : lines) {
+            Product expected = referenceProduct(line);
+            Product actual = parser.parseProduct(line);
+            assertSameProduct(expected, actual, line);
+            assertSameProduct(expected, parser.parseProduct(CharBuffer.wrap(line)), line);
+        }
+    }
+
+    @Test
+    void readsPricesAsValueOfDouble() throws ParseException {
+        List<String> prices = List.of("1.99", "1.90", "1.9", "1", "100", "0", "0.00", "0.005", "2.675", "99999.99",
+                "9999999.99", "10000000", "0.000123", "1.2300", "3.14159265358979", "007.50", "1E-3");
+        for (String price : prices) {
+            BigDecimal expected = BigDecimal.valueOf(Double.parseDouble(price));
+            BigDecimal actual = parser.parseProduct("D,1,Tea," + price + ",0,2019-09-19").getPrice();
+            assertEquals(expected, actual, price);
+            assertEquals(expected.scale(), actual.scale(), price);
+        }
+    }
+
+    @Test
+    void rejectsMalformedProductsAsMessageFormat() {
+        List<String> lines = List.of(
+                "",
+                "D",
+                "D,101",
+                "D,101,Tea,1.99",
+                "D,101,Tea,1.99,0",
+                "X,101,Tea,1.99,0,2019-09-19",
+                "DD,101,Tea,1.99,0,2019-09-19",
+                "D,abc,Tea,1.99,0,2019-09-19",
+                "D,,Tea,1.99,0,2019-09-19",
+                "D,2147483648,Tea,1.99,0,2019-09-19",
+                "D,101,Tea,price,0,2019-09-19",
+                "D,101,Tea,,0,2019-09-19",
+                "D,101,Tea,1.99,x,2019-09-19",
+                "D,101,Tea,1.99,,2019-09-19",
+                "F,103,Cake,3.99,4,2020-13-01",
+                "F,103,Cake,3.99,4,2019-02-29",
+                "F,103,Cake,3.99,4,20-10-2020",
+                "F,103,Cake,3.99,4,",
+                "F,103,Cake,3.99,4,+2020-02-28",
+                "D,122,Name, with comma,1.00,3,2019-09-19");
+        for (String line : lines) {
+            assertBothFail(() -> referenceProduct(line), () -> parser.parseProduct(line), line);
+        }
+    }
+
+    @Test
+    void parsesReviewsAsMessageFormat() throws ParseException {
+        List<String> lines = List.of("4,Nice hot cup of tea", "0,", "5,Rather, good, with commas", "2,  spaces  ",
+                "9,out of range", "-1,negative", "3,\u041e\u0447\u0435\u043d\u044c \u0432\u043a\u0443\u0441\u043d\u043e");
+        for (String line : lines) {
+            Review expected = referenceReview(line);
+            Review actual = parser.parseReview(line);
+            assertEquals(expected.getRating(), actual.getRating(), line);
+            assertEquals(expected.getComments(), actual.getComments(), line);
+            assertEquals(expected.getRating(), parser.parseReviewRating(line), line);
+        }
+    }
+
+    @Test
+    void rejectsMalformedReviewsAsMessageFormat() {
+        List<String> lines = List.of("", "4", "four,Nice", ",Nice", "4.5,Nice");
+        for (String line : lines) {
+            assertBothFail(() -> referenceReview(line), () -> parser.parseReview(line), line);
+            assertBothFail(() -> referenceReview(line), () -> parser.parseReviewRating(line), line);
+        }
+    }
+
+    @Test
+    void readsOtherLayoutsAsMessageFormat() throws ParseException {
+        for (String layout : List.of("{1} ({0} stars)", "{0}{1}", "[{0}]{1}")) {
+            DataParser layoutParser = new DataParser(PRODUCT_FORMAT, layout);
+            for (String line : List.of("Nice hot cup of tea (4 stars)", "4Nice", "4", "[3]Good", "[3]", "")) {
+                Review expected;
+                try {
+                    Object[] objects = new MessageFormat(layout).parse(line);
+                    expected = new Review(Rateable.convert(Integer.parseInt((String) objects[0])), (String) objects[1]);
+                } catch (ParseException | NumberFormatException e) {
+                    assertBothFail(() -> null, () -> layoutParser.parseReview(line), layout + " " + line);
+                    continue;
+                }
+                Review actual = layoutParser.parseReview(line);
+                assertEquals(expected.getRating(), actual.getRating(), layout + " " + line);
+                assertEquals(expected.getComments(), actual.getComments(), layout + " " + line);
+            }
+        }
+    }
+
+    private interface Parse {
+        Object parse() throws Exception;
+    }
+
+    private static void assertBothFail(Parse reference, Parse actual, String line) {
+        assertFails(reference, line);
+        assertFails(actual, line);
+    }
+
+    /**
+     * line is rejected by exception or, as by former parser, by unknown product type
+     */
+    private static void assertFails(Parse parse, String line) {
+        Object result;
+        try {
+            result = parse.parse();
+        } catch (ParseException | NumberFormatException | DateTimeException e) {
+            return;
+        } catch (Exception e) {
+            throw new AssertionError("Unexpected exception for " + line, e);
+        }
+        assertEquals(null, result, line);
+    }
+
+    private static void assertSameProduct(Product expected, Product actual, String line) {
+        assertEquals(expected.getClass(), actual.getClass(), line);
+        assertEquals(expected.getId(), actual.getId(), line);
+        assertEquals(expected.getName(), actual.getName(), line);
+        assertEquals(expected.getPrice(), actual.getPrice(), line);
+        assertEquals(expected.getRating(), actual.getRating(), line);
+        assertEquals(expected.getBestBefore(), actual.getBestBefore(), line);
+    }
+
+    /**
+     * product parsed as before {@link DataParser}
+     */
+    private static Product referenceProduct(String text) throws ParseException {
+        Object[] objects = new MessageFormat(PRODUCT_FORMAT).parse(text);
+        String type = (String) objects[0];
+        int id = Integer.parseInt((String) objects[1]);
+        String name = (String) objects[2];
+        BigDecimal price = BigDecimal.valueOf(Double.parseDouble((String) objects[3]));
+        Rating rating = Rateable.convert(Integer.parseInt((String) objects[4]));
+        switch (type) {
+            case "D":
+                return new Drink(id, name, price, rating);
+            case "F":
+                return new Food(id, name, price, rating, LocalDate.parse((String) objects[5]));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * review parsed as before {@link DataParser}
+     */
+    private static Review referenceReview(String text) throws ParseException {
+        Object[] objects = new MessageFormat(REVIEW_FORMAT).parse(text);
+        return new Review(Rateable.convert(Integer.parseInt((String) objects[0])), (String) objects[1]);
+    }
+}
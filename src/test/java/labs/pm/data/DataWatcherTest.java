@@ -0,0 +1,173 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@code DataWatcherTest} appends to files in a temporary data folder and waits until
+ * {@link DataWatcher} passes the changes, directly and through {@link ProductManager}.
+ * @author mserge
+ * @version 1
+ */
+class DataWatcherTest {
+    private static final long TIMEOUT = 10_000;
+
+    @TempDir
+    Path folder;
+
+    private DataWatcher watcher;
+
+    /**
+     * records changes, review lines of products not in {@link #products} are refused
+     */
+    private final Set<String> products = ConcurrentHashMap.newKeySet();
+    private final List<String> productFiles = new CopyOnWriteArrayList<>();
+    private final List<String> reviewLines = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void close() {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    @Test
+    void passesCompleteLinesAppendedAfterOffset() throws Exception {
+        Path reviews = folder.resolve("reviews101.csv");
+        Files.writeString(reviews, "5,Read by catalog\n");
+        products.add("101");
+        start(Map.of(reviews, Files.size(reviews)));
+
+        append(reviews, "4,Second\n3,Thi");
+        await(() -> reviewLines.size() == 1);
+        append(reviews, "rd\n\n2,Fourth\n");
+        await(() -> reviewLines.size() == 3);
+        assertEquals(List.of("reviews101.csv 4,Second", "reviews101.csv 3,Third", "reviews101.csv 2,Fourth"),
+                reviewLines);
+    }
+
+    @Test
+    void passesLinesAppendedSinceCatalogReadFileOnStart() throws Exception {
+        Path reviews = folder.resolve("reviews101.csv");
+        Files.writeString(reviews, "5,Read by catalog\n");
+        long offset = Files.size(reviews);
+        append(reviews, "4,Appended before start\n");
+        Path unread = folder.resolve("reviews102.csv");
+        append(unread, "3,Not read by catalog\n");
+        products.add("101");
+        products.add("102");
+        start(Map.of(reviews, offset));
+
+        await(() -> reviewLines.size() == 2);
+        assertTrue(reviewLines.containsAll(List.of("reviews101.csv 4,Appended before start",
+                "reviews102.csv 3,Not read by catalog")), reviewLines.toString());
+    }
+
+    @Test
+    void keepsReviewsPendingUntilProductFileArrives() throws Exception {
+        append(folder.resolve("reviews202.csv"), "1,Before start\n");
+        start(Map.of());
+        Path reviews = folder.resolve("reviews201.csv");
+        append(reviews, "5,Early\n");
+        append(folder.resolve("product300.csv"), "D,300,Tea,1.99,0,2020-10-20");
+        await(() -> productFiles.contains("product300.csv"));
+        append(reviews, "4,Still early\n");
+        Thread.sleep(200);
+        assertEquals(List.of(), reviewLines);
+
+        products.add("201");
+        append(folder.resolve("product201.csv"), "D,201,Coffee,2.99,0,2020-10-20");
+        await(() -> reviewLines.size() == 2);
+        assertEquals(List.of("reviews201.csv 5,Early", "reviews201.csv 4,Still early"), reviewLines);
+
+        products.add("202");
+        append(folder.resolve("product202.csv"), "D,202,Juice,2.49,0,2020-10-20");
+        await(() -> reviewLines.size() == 3);
+        assertEquals("reviews202.csv 1,Before start", reviewLines.get(2));
+    }
+
+    @Test
+    void addsProductFileOnceItIsComplete() throws Exception {
+        Path data = Files.createDirectories(folder.resolve("data"));
+        Map<String, String> settings = new HashMap<>();
+        settings.put("data.folder", data.toString());
+        settings.put("temp.folder", folder.resolve("temp").toString());
+        settings.put("reports.folder", folder.toString());
+        settings.put("journal.enabled", "false");
+        settings.put("load.snapshot", "false");
+        settings.put("data.watch", "true");
+        ProductManager pm = ProductManager.newInstance(settings);
+        try {
+            Path product = data.resolve("product201.csv");
+            append(product, "D,201,Cof");
+            append(data.resolve("reviews201.csv"), "4,Strong\n");
+            Thread.sleep(200);
+            assertTrue(pm.findProducts(new ProductQuery()).isEmpty());
+
+            append(product, "fee,2.99,0,2020-10-20");
+            await(() -> pm.findProducts(new ProductQuery()).size() == 1
+                    && pm.findProducts(new ProductQuery()).get(0).getRating() == Rating.FOUR_STAR);
+            assertEquals("Coffee", pm.findProducts(new ProductQuery()).get(0).getName());
+
+            append(data.resolve("reviews201.csv"), "2,Weak\n");
+            await(() -> pm.findProducts(new ProductQuery()).get(0).getRating() == Rating.THREE_STAR);
+        } finally {
+            pm.close();
+        }
+    }
+
+    private void start(Map<Path, Long> offsets) throws IOException {
+        watcher = new DataWatcher(folder,
+                folder.getFileSystem().getPathMatcher("glob:product*.csv"),
+                folder.getFileSystem().getPathMatcher("glob:reviews*.csv"),
+                offsets,
+                new DataWatcher.Listener() {
+                    @Override
+                    public void productFile(Path file) {
+                        productFiles.add(file.getFileName().toString());
+                    }
+
+                    @Override
+                    public boolean reviewLines(Path file, List<String> lines) {
+                        String name = file.getFileName().toString();
+                        if (!products.contains(name.replaceAll("\\D", ""))) {
+                            return false;
+                        }
+                        List<String> received = new ArrayList<>();
+                        lines.forEach(line -> received.add(name + " " + line));
+                        reviewLines.addAll(received);
+                        return true;
+                    }
+                });
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "change was not applied in time");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * {@code DiscountTotalsTest} compares totals kept by {@link DiscountTotals} with sum of
+ * {@link Product#getDiscount()} of the same products at the same moment.
+ * Expected totals are computed before and after reading totals, so a check that crosses
+ * start or end of happy hour or midnight is repeated.
+ * @author mserge
+ * @version 1
+ */
+class DiscountTotalsTest {
+    private final DiscountTotals totals = new DiscountTotals();
+    private final List<Product> products = new ArrayList<>();
+
+    @Test
+    void discountsFoodOnlyAfterBestBefore() {
+        LocalDate today = LocalDate.now();
+        add(new Food(1, "Expired long ago", new BigDecimal("9.99"), Rating.ONE_STAR, today.minusYears(1)));
+        add(new Food(2, "Expired yesterday", new BigDecimal("4.99"), Rating.TWO_STAR, today.minusDays(1)));
+        add(new Food(3, "Best before today", new BigDecimal("3.99"), Rating.THREE_STAR, today));
+        add(new Food(4, "Best before tomorrow", new BigDecimal("2.99"), Rating.FOUR_STAR, today.plusDays(1)));
+        add(new Food(5, "Best before next year", new BigDecimal("1.99"), Rating.FIVE_STAR, today.plusYears(1)));
+        assertTotals();
+
+        Map<Rating, BigDecimal> current = totals.getTotals();
+        if (LocalDate.now().equals(today)) {
+            assertEquals(0, new BigDecimal("1.00").compareTo(current.get(Rating.ONE_STAR)));
+            assertEquals(0, new BigDecimal("0.50").compareTo(current.get(Rating.TWO_STAR)));
+            assertEquals(0, BigDecimal.ZERO.compareTo(current.get(Rating.THREE_STAR)));
+            assertEquals(0, BigDecimal.ZERO.compareTo(current.get(Rating.FOUR_STAR)));
+            assertEquals(0, BigDecimal.ZERO.compareTo(current.get(Rating.FIVE_STAR)));
+        }
+    }
+
+    @Test
+    void discountsDrinksInHappyHour() {
+        add(new Drink(1, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED));
+        add(new Drink(2, "Coffee", new BigDecimal("2.99"), Rating.NOT_RATED));
+        add(new Drink(3, "Juice", new BigDecimal("2.49"), Rating.FIVE_STAR));
+        add(new Food(4, "Cake", new BigDecimal("3.99"), Rating.NOT_RATED, LocalDate.now().minusDays(2)));
+        assertTotals();
+    }
+
+    @Test
+    void keepsTotalsOfProductsAddedAfterTotalsWereRead() {
+        LocalDate today = LocalDate.now();
+        add(new Food(1, "Cake", new BigDecimal("3.99"), Rating.ONE_STAR, today.minusDays(1)));
+        assertTotals();
+        add(new Food(2, "Bread", new BigDecimal("1.99"), Rating.ONE_STAR, today.minusDays(3)));
+        add(new Food(3, "Milk", new BigDecimal("0.99"), Rating.ONE_STAR, today));
+        add(new Drink(4, "Tea", new BigDecimal("1.99"), Rating.ONE_STAR));
+        assertTotals();
+    }
+
+    @Test
+    void movesDiscountToNewRating() {
+        LocalDate today = LocalDate.now();
+        Food cake = new Food(1, "Cake", new BigDecimal("3.99"), Rating.NOT_RATED, today.minusDays(1));
+        Food bread = new Food(2, "Bread", new BigDecimal("1.99"), Rating.NOT_RATED, today);
+        Drink tea = new Drink(3, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED);
+        add(cake);
+        add(bread);
+        add(tea);
+        assertTotals();
+
+        rerate(cake, Rating.FOUR_STAR);
+        rerate(bread, Rating.FOUR_STAR);
+        assertTotals();
+        rerate(tea, Rating.TWO_STAR);
+        assertTotals();
+        assertFalse(totals.getTotals().containsKey(Rating.NOT_RATED));
+    }
+
+    @Test
+    void replacesTotalsOnReset() {
+        LocalDate today = LocalDate.now();
+        add(new Food(1, "Cake", new BigDecimal("3.99"), Rating.ONE_STAR, today.minusDays(1)));
+        add(new Drink(2, "Tea", new BigDecimal("1.99"), Rating.TWO_STAR));
+        assertTotals();
+
+        products.clear();
+        products.add(new Food(3, "Bread", new BigDecimal("1.99"), Rating.THREE_STAR, today.minusDays(1)));
+        products.add(new Food(4, "Milk", new BigDecimal("0.99"), Rating.THREE_STAR, today.plusDays(1)));
+        totals.reset(products);
+        assertTotals();
+
+        products.clear();
+        totals.reset(products);
+        assertEquals(Map.of(), totals.getTotals());
+    }
+
+    private void add(Product product) {
+        products.add(product);
+        totals.add(product);
+    }
+
+    private void rerate(Product product, Rating rating) {
+        Product rated = product.applyRating(rating);
+        products.set(products.indexOf(product), rated);
+        totals.rerate(product, rated);
+    }
+
+    private void assertTotals() {
+        Supplier<Map<Rating, BigDecimal>> expected = () -> {
+            Map<Rating, BigDecimal> sums = new EnumMap<>(Rating.class);
+            products.forEach(product -> sums.merge(product.getRating(), product.getDiscount(), BigDecimal::add));
+            return sums;
+        };
+        for (int attempt = 0; ; attempt++) {
+            Map<Rating, BigDecimal> before = expected.get();
+            Map<Rating, BigDecimal> actual = totals.getTotals();
+            if (before.equals(expected.get()) || attempt == 2) {
+                assertEquals(before.keySet(), actual.keySet());
+                before.forEach((rating, sum) -> assertEquals(0, sum.compareTo(actual.get(rating)),
+                        rating + " expected " + sum + " but was " + actual.get(rating)));
+                return;
+            }
+        }
+    }
+}
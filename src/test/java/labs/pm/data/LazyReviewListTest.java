@@ -0,0 +1,142 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@code LazyReviewListTest} scans a review file into {@link LazyReviewList}, adds reviews,
+ * then truncates or deletes the file before the list reads it, and checks that {@code get},
+ * {@code size} and iteration agree on the reviews the file yields now followed by the added reviews,
+ * whichever index is read first.
+ * @author mserge
+ * @version 1
+ */
+class LazyReviewListTest {
+    private static final Review ADDED_FIRST = new Review(Rating.TWO_STAR, "Added first");
+    private static final Review ADDED_SECOND = new Review(Rating.ONE_STAR, "Added second");
+
+    private final DataParser parser = new DataParser("{0},{1},{2},{3},{4},{5}", "{0},{1}");
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void readsReviewsOfUnchangedFile() throws IOException {
+        Path file = folder.resolve("reviews101.csv");
+        Files.writeString(file, "5,First\n4,Second\n3,Third\n");
+        List<Review> expected = List.of(new Review(Rating.FIVE_STAR, "First"), new Review(Rating.FOUR_STAR, "Second"),
+                new Review(Rating.THREE_STAR, "Third"), ADDED_FIRST, ADDED_SECOND);
+        assertReviews(expected, () -> list(file, 3));
+    }
+
+    @Test
+    void readsReviewsLeftInTruncatedFile() throws IOException {
+        Path file = folder.resolve("reviews101.csv");
+        Files.writeString(file, "5,First\n4,Second\n3,Third\n");
+        List<Review> expected = List.of(new Review(Rating.FIVE_STAR, "First"), ADDED_FIRST, ADDED_SECOND);
+        assertReviews(expected, () -> {
+            LazyReviewList list = list(file, 3);
+            truncate(file, "5,First\n");
+            return list;
+        });
+    }
+
+    @Test
+    void readsOnlyAddedReviewsOfDeletedFile() throws IOException {
+        Path file = folder.resolve("reviews101.csv");
+        Files.writeString(file, "5,First\n4,Second\n");
+        assertReviews(List.of(ADDED_FIRST, ADDED_SECOND), () -> {
+            LazyReviewList list = list(file, 2);
+            delete(file);
+            return list;
+        });
+    }
+
+    /**
+     * reads each index, and indexes past the end, first thing from a list just created, then whole list
+     */
+    private void assertReviews(List<Review> expected, Supplier<LazyReviewList> newList) throws IOException {
+        Path file = folder.resolve("reviews101.csv");
+        String content = Files.exists(file) ? Files.readString(file) : "";
+        for (int index = 0; index <= expected.size() + 2; index++) {
+            Files.writeString(file, content);
+            LazyReviewList list = newList.get();
+            if (index < expected.size()) {
+                assertReview(expected.get(index), list.get(index));
+            } else {
+                int outside = index;
+                assertThrows(IndexOutOfBoundsException.class, () -> list.get(outside));
+            }
+            assertEquals(expected.size(), list.size(), "index " + index);
+            List<Review> iterated = new ArrayList<>();
+            list.forEach(iterated::add);
+            assertEquals(expected.size(), iterated.size(), "index " + index);
+            for (int i = 0; i < expected.size(); i++) {
+                assertReview(expected.get(i), list.get(i));
+                assertReview(expected.get(i), iterated.get(i));
+            }
+        }
+    }
+
+    /**
+     * list of reviews scanned from the file with {@code count} reviews and two reviews added after scan
+     */
+    private LazyReviewList list(Path file, int count) {
+        RatingSummary summary = new RatingSummary();
+        for (int i = 0; i < count; i++) {
+            summary.add(Rating.FIVE_STAR);
+        }
+        LazyReviewList list = new LazyReviewList(101, summary, new ReviewCache(100), () -> read(file),
+                new ArrayList<>());
+        list.add(ADDED_FIRST);
+        list.add(ADDED_SECOND);
+        return list;
+    }
+
+    /**
+     * reads reviews as catalog does, missing file has no reviews
+     */
+    private List<Review> read(Path file) {
+        List<Review> reviews = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(file)) {
+                reviews.add(parser.parseReview(line));
+            }
+        } catch (IOException | ParseException e) {
+            // reviews read so far
+        }
+        return reviews;
+    }
+
+    private static void truncate(Path file, String content) {
+        try {
+            Files.writeString(file, content);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void assertReview(Review expected, Review actual) {
+        assertEquals(expected.getRating(), actual.getRating());
+        assertEquals(expected.getComments(), actual.getComments());
+    }
+}
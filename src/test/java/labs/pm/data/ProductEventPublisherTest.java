@@ -0,0 +1,243 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@code ProductEventPublisherTest} publishes creations of products to a subscriber which requests everything
+ * and to a slow one, and checks what each of them receives under every {@link ProductEventPublisher.Overflow},
+ * after cancel and after close.
+ * @author mserge
+ * @version 1
+ */
+class ProductEventPublisherTest {
+    private static final long TIMEOUT = 10_000;
+
+    private final AtomicInteger dropped = new AtomicInteger();
+    private ProductEventPublisher publisher;
+
+    /**
+     * records received product ids, then error or completion
+     */
+    private static class Recorder implements Flow.Subscriber<ProductEvent> {
+        private final long initialDemand;
+        final List<Integer> ids = new CopyOnWriteArrayList<>();
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+        volatile boolean completed;
+
+        private Recorder(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(ProductEvent event) {
+            ids.add(event.getProductId());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    @AfterEach
+    void close() {
+        if (publisher != null) {
+            publisher.close();
+        }
+    }
+
+    @Test
+    void dropsOldestEventsOfSlowSubscriberOnly() throws InterruptedException {
+        Recorder slow = new Recorder(0);
+        Recorder fast = new Recorder(Long.MAX_VALUE);
+        publish(ProductEventPublisher.Overflow.DROP_OLDEST, 100, slow, fast);
+
+        slow.subscription.request(100);
+        await(() -> slow.ids.size() == 4);
+        assertEquals(List.of(97, 98, 99, 100), slow.ids);
+        assertEquals(96, dropped.get());
+    }
+
+    @Test
+    void dropsLatestEventsOfSlowSubscriberOnly() throws InterruptedException {
+        Recorder slow = new Recorder(0);
+        Recorder fast = new Recorder(Long.MAX_VALUE);
+        publish(ProductEventPublisher.Overflow.DROP_LATEST, 100, slow, fast);
+
+        slow.subscription.request(100);
+        await(() -> slow.ids.size() == 4);
+        assertEquals(List.of(1, 2, 3, 4), slow.ids);
+        assertEquals(96, dropped.get());
+    }
+
+    @Test
+    void cancelsSlowSubscriberWithError() throws InterruptedException {
+        Recorder slow = new Recorder(0);
+        Recorder fast = new Recorder(Long.MAX_VALUE);
+        publish(ProductEventPublisher.Overflow.CANCEL, 100, slow, fast);
+
+        await(() -> slow.error != null);
+        assertEquals(IllegalStateException.class, slow.error.getClass());
+        slow.subscription.request(100);
+        Thread.sleep(100);
+        assertEquals(List.of(), slow.ids);
+        assertFalse(slow.completed);
+    }
+
+    @Test
+    void keepsDispatchingWhileSubscriberIsBusy() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder busy = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(ProductEvent event) {
+                super.onNext(event);
+                try {
+                    release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Recorder fast = new Recorder(Long.MAX_VALUE);
+        publisher = new ProductEventPublisher(1000, 4, ProductEventPublisher.Overflow.DROP_OLDEST, dropped::incrementAndGet);
+        publisher.subscribe(busy);
+        publisher.subscribe(fast);
+        created(1, 1, fast);
+        await(() -> busy.ids.size() == 1);
+        created(2, 1000, fast);
+
+        assertEquals(List.of(1), busy.ids);
+        release.countDown();
+        await(() -> busy.ids.size() == 5);
+        assertEquals(List.of(1, 997, 998, 999, 1000), busy.ids);
+        assertEquals(995, dropped.get());
+    }
+
+    @Test
+    void stopsDeliveringAfterCancel() throws InterruptedException {
+        publisher = new ProductEventPublisher(1024, 1024, ProductEventPublisher.Overflow.DROP_OLDEST, dropped::incrementAndGet);
+        Recorder cancelled = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(ProductEvent event) {
+                super.onNext(event);
+                if (event.getProductId() == 3) {
+                    subscription.cancel();
+                }
+            }
+        };
+        Recorder other = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(cancelled);
+        publisher.subscribe(other);
+        created(1, 10);
+        await(() -> other.ids.size() == 10);
+        publisher.close();
+        await(() -> other.completed);
+        assertEquals(List.of(1, 2, 3), cancelled.ids);
+        assertFalse(cancelled.completed);
+        assertEquals(0, dropped.get());
+    }
+
+    @Test
+    void completesAfterBufferedEventsOnClose() throws InterruptedException {
+        publisher = new ProductEventPublisher(1024, 1024, ProductEventPublisher.Overflow.CANCEL, dropped::incrementAndGet);
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        created(1, 20);
+        publisher.close();
+        assertFalse(recorder.completed);
+
+        recorder.subscription.request(15);
+        await(() -> recorder.ids.size() == 15);
+        assertFalse(recorder.completed);
+        recorder.subscription.request(5);
+        await(() -> recorder.completed);
+        assertEquals(ids(1, 20), recorder.ids);
+
+        Recorder late = new Recorder(1);
+        publisher.subscribe(late);
+        await(() -> late.completed);
+        assertEquals(List.of(), late.ids);
+    }
+
+    @Test
+    void rejectsRequestOfNoEvents() throws InterruptedException {
+        publisher = new ProductEventPublisher(1024, 16, ProductEventPublisher.Overflow.DROP_OLDEST, dropped::incrementAndGet);
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(0);
+        await(() -> recorder.error != null);
+        assertEquals(IllegalArgumentException.class, recorder.error.getClass());
+    }
+
+    /**
+     * publishes creations of products 1 to {@code count} with buffer of 4 events, one after another
+     * as fast subscriber receives them
+     */
+    private void publish(ProductEventPublisher.Overflow overflow, int count, Recorder slow, Recorder fast)
+            throws InterruptedException {
+        publisher = new ProductEventPublisher(count, 4, overflow, dropped::incrementAndGet);
+        publisher.subscribe(slow);
+        publisher.subscribe(fast);
+        created(1, count, fast);
+        assertEquals(ids(1, count), fast.ids);
+    }
+
+    private void created(int from, int to) {
+        for (int id = from; id <= to; id++) {
+            publisher.created(new Drink(id, "Drink " + id, BigDecimal.ONE, Rating.NOT_RATED));
+        }
+    }
+
+    /**
+     * publishes each creation after the previous one was received by subscriber, so its buffer never fills
+     */
+    private void created(int from, int to, Recorder subscriber) throws InterruptedException {
+        for (int id = from; id <= to; id++) {
+            created(id, id);
+            int received = id - from + 1;
+            await(() -> subscriber.ids.size() >= received);
+        }
+    }
+
+    private static List<Integer> ids(int from, int to) {
+        return IntStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "events were not delivered in time");
+            Thread.sleep(5);
+        }
+    }
+}
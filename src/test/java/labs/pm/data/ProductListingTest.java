@@ -0,0 +1,163 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@code ProductListingTest} checks that listing written in chunks and pages read one after another
+ * by page tokens make up the same products as the query read at once, and that listing reads
+ * each matching product once however many chunks it is written in.
+ * @author mserge
+ * @version 1
+ */
+class ProductListingTest {
+    @TempDir
+    Path folder;
+
+    private ProductManager pm;
+
+    @BeforeEach
+    void open() throws IOException {
+        pm = newManager("data", 100, Map.of());
+    }
+
+    @AfterEach
+    void close() {
+        pm.close();
+    }
+
+    @Test
+    void writesListingInChunks() throws IOException {
+        for (ProductQuery query : queries()) {
+            List<Product> products = pm.findProducts(query);
+            List<String> rows = listing(query).lines().collect(Collectors.toList());
+            assertEquals(products.size(), rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                assertTrue(rows.get(i).startsWith(products.get(i).getName() + ","), rows.get(i));
+            }
+        }
+    }
+
+    @Test
+    void readsSameListingByPages() throws IOException {
+        for (ProductQuery query : queries()) {
+            String listing = listing(query);
+            for (int pageSize : new int[]{1, 9, 33, 100, 1000}) {
+                StringWriter pages = new StringWriter();
+                String token = null;
+                int count = 0;
+                do {
+                    token = pm.writeProducts(query, "en-GB", token, pageSize, pages);
+                    count++;
+                } while (token != null);
+                assertEquals(listing, pages.toString(), "page size " + pageSize);
+                assertTrue(count <= listing.lines().count() / pageSize + 1, "page size " + pageSize);
+            }
+        }
+    }
+
+    @Test
+    void rejectsTokenOfAnotherQuery() throws IOException {
+        String token = pm.writeProducts(new ProductQuery().orderBy(ProductQuery.Order.PRICE), "en-GB", null, 10,
+                new StringWriter());
+        assertThrows(IllegalArgumentException.class, () -> pm.writeProducts(
+                new ProductQuery().orderBy(ProductQuery.Order.PRICE, true), "en-GB", token, 10, new StringWriter()));
+        assertThrows(IllegalArgumentException.class, () -> pm.writeProducts(
+                new ProductQuery().orderBy(ProductQuery.Order.RATING), "en-GB", token, 10, new StringWriter()));
+        assertThrows(IllegalArgumentException.class, () -> pm.writeProducts(
+                new ProductQuery().orderBy(ProductQuery.Order.PRICE), "en-GB", "PRICE:A:x:1", 10, new StringWriter()));
+    }
+
+    @Test
+    void readsMatchingProductsOnceForListing() throws IOException {
+        for (Map<String, String> store : List.of(Map.of("query.indexes", "true"),
+                Map.of("query.indexes", "false", "catalog.store", "columns"))) {
+            long[] small = listingCost(500, store);
+            long[] large = listingCost(2000, store);
+            assertEquals(500, small[0], store.toString());
+            assertEquals(2000, large[0], store.toString());
+            assertEquals(500, small[1], store.toString());
+            assertEquals(2000, large[1], store.toString());
+            assertTrue(large[2] < small[2] * 8, store + " comparisons " + small[2] + " then " + large[2]);
+        }
+    }
+
+    /**
+     * @return filter calls of a listing without order, filter calls and comparisons of a listing sorted by comparator
+     */
+    private long[] listingCost(int size, Map<String, String> store) throws IOException {
+        long[] cost = new long[3];
+        ProductManager manager = newManager("cost" + size + store.hashCode(), size, store);
+        try {
+            manager.writeProducts(new ProductQuery().filter(product -> ++cost[0] > 0), "en-GB", new StringWriter());
+            manager.writeProducts(new ProductQuery().filter(product -> ++cost[1] > 0).sortedBy((a, b) -> {
+                cost[2]++;
+                return a.getName().compareTo(b.getName());
+            }), "en-GB", new StringWriter());
+        } finally {
+            manager.close();
+        }
+        return cost;
+    }
+
+    /**
+     * @return manager listing in chunks of 8 products, with {@code size} products of 7 prices and 6 ratings
+     */
+    private ProductManager newManager(String name, int size, Map<String, String> extra) throws IOException {
+        Map<String, String> settings = new HashMap<>(extra);
+        settings.put("data.folder", Files.createDirectories(folder.resolve(name)).toString());
+        settings.put("temp.folder", folder.resolve("temp").toString());
+        settings.put("reports.folder", folder.toString());
+        settings.put("journal.enabled", "false");
+        settings.put("load.snapshot", "false");
+        settings.put("listing.chunk.size", "8");
+        ProductManager manager = ProductManager.newInstance(settings);
+        LocalDate today = LocalDate.now();
+        for (int id = 1; id <= size; id++) {
+            BigDecimal price = BigDecimal.valueOf(100 + id % 7 * 50, 2);
+            if (id % 3 == 0) {
+                manager.createProduct(id, "Food " + id, price, Rateable.convert(id % 6), today.plusDays(id % 5 - 2));
+            } else {
+                manager.createProduct(id, "Drink " + id, price, Rateable.convert(id % 6));
+            }
+        }
+        return manager;
+    }
+
+    private static List<ProductQuery> queries() {
+        List<ProductQuery> queries = new ArrayList<>();
+        for (ProductQuery.Order order : ProductQuery.Order.values()) {
+            queries.add(new ProductQuery().orderBy(order));
+            queries.add(new ProductQuery().orderBy(order, true).priceBetween(BigDecimal.valueOf(150, 2), null));
+        }
+        queries.add(new ProductQuery());
+        queries.add(new ProductQuery().sortedBy(Comparator.comparing(Product::getName)));
+        queries.add(new ProductQuery().ratingBetween(Rating.TWO_STAR, Rating.FOUR_STAR).orderBy(ProductQuery.Order.PRICE));
+        return queries;
+    }
+
+    private String listing(ProductQuery query) throws IOException {
+        StringWriter out = new StringWriter();
+        pm.writeProducts(query, "en-GB", out);
+        return out.toString();
+    }
+}
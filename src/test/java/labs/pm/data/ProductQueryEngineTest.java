@@ -0,0 +1,114 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * {@code ProductQueryEngineTest} adds and rerates products of {@link ProductQueryEngine} from several threads
+ * at once, while another thread checks that every snapshot it reads has all indexes of the same size.
+ * No change may be lost when writers publish at the same time.
+ * @author mserge
+ * @version 1
+ */
+class ProductQueryEngineTest {
+    private static final int WRITERS = 8;
+    private static final int PRODUCTS = 500;
+
+    private final ProductQueryEngine engine = new ProductQueryEngine(true);
+    private final Map<Integer, Product> latest = new ConcurrentHashMap<>();
+
+    @Test
+    void keepsChangesOfConcurrentWriters() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            Future<Integer> reader = executor.submit(() -> {
+                int checked = 0;
+                start.await();
+                while (writing.get() || checked == 0) {
+                    assertConsistent(engine.snapshot());
+                    checked++;
+                }
+                return checked;
+            });
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int first = w * PRODUCTS + 1;
+                Callable<Void> writer = () -> {
+                    start.await();
+                    write(first);
+                    return null;
+                };
+                writers.add(executor.submit(writer));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            reader.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ProductQueryEngine.Snapshot snapshot = engine.snapshot();
+        assertEquals(WRITERS * PRODUCTS, snapshot.size());
+        assertConsistent(snapshot);
+        latest.forEach((id, product) -> assertSame(product, snapshot.get(id), "product " + id));
+        for (Rating rating : Rating.values()) {
+            long expected = latest.values().stream().filter(product -> product.getRating() == rating).count();
+            assertEquals(expected, engine.execute(new ProductQuery().ratingBetween(rating, rating), snapshot).size(),
+                    rating.name());
+        }
+    }
+
+    /**
+     * adds products with ids from {@code first} and rates each of them several times
+     */
+    private void write(int first) {
+        LocalDate today = LocalDate.now();
+        for (int id = first; id < first + PRODUCTS; id++) {
+            BigDecimal price = BigDecimal.valueOf(id % 40, 1);
+            Product product = id % 2 == 0
+                    ? new Food(id, "Food " + id, price, Rating.NOT_RATED, today.plusDays(id % 7 - 3))
+                    : new Drink(id, "Drink " + id, price, Rating.NOT_RATED);
+            engine.add(product);
+            latest.put(id, product);
+        }
+        for (int round = 1; round <= 3; round++) {
+            for (int id = first; id < first + PRODUCTS; id++) {
+                Product old = latest.get(id);
+                Product rated = old.applyRating(Rateable.convert((id + round) % 6));
+                engine.rerate(old, rated);
+                latest.put(id, rated);
+            }
+        }
+    }
+
+    /**
+     * indexes of one snapshot hold the same products
+     */
+    private void assertConsistent(ProductQueryEngine.Snapshot snapshot) {
+        int size = snapshot.size();
+        assertEquals(size, engine.execute(new ProductQuery().orderBy(ProductQuery.Order.PRICE), snapshot).size());
+        assertEquals(size, engine.execute(new ProductQuery().orderBy(ProductQuery.Order.RATING), snapshot).size());
+        assertEquals(size, engine.execute(new ProductQuery().orderBy(ProductQuery.Order.BEST_BEFORE), snapshot).size());
+    }
+}
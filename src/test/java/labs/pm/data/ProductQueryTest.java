@@ -0,0 +1,201 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@code ProductQueryTest} runs random queries and pages of them against catalogs with and without
+ * query indexes, against columns store and sharded catalog, and compares results with products of the catalog
+ * filtered and sorted one by one.
+ * @author mserge
+ * @version 1
+ */
+class ProductQueryTest {
+    private static final Map<ProductQuery.Order, Comparator<Product>> ORDERS = Map.of(
+            ProductQuery.Order.ID, Comparator.comparingInt(Product::getId),
+            ProductQuery.Order.PRICE, Comparator.comparing(Product::getPrice).thenComparingInt(Product::getId),
+            ProductQuery.Order.RATING, Comparator.comparing(Product::getRating).thenComparingInt(Product::getId),
+            ProductQuery.Order.BEST_BEFORE, Comparator.comparing(Product::getBestBefore).thenComparingInt(Product::getId));
+
+    @TempDir
+    Path folder;
+
+    private final Random random = new Random(7);
+    private final Map<Integer, Product> products = new HashMap<>();
+    private ProductManager pm;
+
+    @AfterEach
+    void close() {
+        if (pm != null) {
+            pm.close();
+        }
+    }
+
+    @Test
+    void selectsProductsWithIndexes() throws IOException {
+        checkQueries(Map.of("query.indexes", "true"));
+    }
+
+    @Test
+    void selectsProductsWithoutIndexes() throws IOException {
+        checkQueries(Map.of("query.indexes", "false"));
+    }
+
+    @Test
+    void selectsProductsOfColumns() throws IOException {
+        checkQueries(Map.of("query.indexes", "true", "catalog.store", "columns"));
+    }
+
+    @Test
+    void selectsProductsOfShards() throws IOException {
+        checkQueries(Map.of("query.indexes", "true", "catalog.shards", "4"));
+    }
+
+    private void checkQueries(Map<String, String> extra) throws IOException {
+        Map<String, String> settings = new HashMap<>(extra);
+        settings.put("data.folder", Files.createDirectories(folder.resolve("data")).toString());
+        settings.put("temp.folder", folder.resolve("temp").toString());
+        settings.put("reports.folder", folder.toString());
+        settings.put("journal.enabled", "false");
+        settings.put("load.snapshot", "false");
+        pm = ProductManager.newInstance(settings);
+        LocalDate today = LocalDate.now();
+        for (int id = 1; id <= 150; id++) {
+            BigDecimal price = BigDecimal.valueOf(100 + random.nextInt(15) * 25, 2);
+            Rating rating = Rateable.convert(random.nextInt(6));
+            Product product = id % 2 == 0
+                    ? pm.createProduct(id, "Food " + id, price, rating, today.plusDays(random.nextInt(9) - 4))
+                    : pm.createProduct(id, "Drink " + id, price, rating);
+            products.put(id, product);
+        }
+        for (int i = 0; i < 300; i++) {
+            if (i % 50 == 49) {
+                int id = 1 + random.nextInt(150);
+                products.put(id, pm.reviewProduct(id, Rateable.convert(random.nextInt(6)), "Review " + i));
+            }
+            ProductQuery query = randomQuery(today);
+            List<Integer> actual = ids(pm.findProducts(query));
+            if (query.order == null && query.sorter == null) {
+                List<Integer> matching = ids(expected(query));
+                assertEquals(Math.min(query.limit, Math.max(0, matching.size() - query.offset)), actual.size(), "query " + i);
+                assertTrue(matching.containsAll(actual), "query " + i);
+                assertEquals(actual.size(), actual.stream().distinct().count(), "query " + i);
+            } else {
+                assertEquals(ids(expected(query)), actual, "query " + i);
+                assertPages(query);
+            }
+        }
+    }
+
+    /**
+     * pages read by offset and limit make up the whole result
+     */
+    private void assertPages(ProductQuery query) {
+        int pageSize = 1 + random.nextInt(40);
+        List<Product> pages = new ArrayList<>();
+        for (int offset = 0; ; offset += pageSize) {
+            List<Product> page = pm.findProducts(page(query, offset, pageSize));
+            pages.addAll(page);
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+        assertEquals(ids(expected(page(query, 0, Integer.MAX_VALUE))), ids(pages));
+    }
+
+    /**
+     * @return same query with another offset and limit
+     */
+    private static ProductQuery page(ProductQuery query, int offset, int limit) {
+        ProductQuery page = new ProductQuery()
+                .priceBetween(query.minPrice, query.maxPrice)
+                .ratingBetween(query.minRating, query.maxRating)
+                .bestBeforeBetween(query.minBestBefore, query.maxBestBefore)
+                .offset(offset)
+                .limit(limit);
+        if (query.filter != null) {
+            page.filter(query.filter);
+        }
+        if (query.sorter != null) {
+            page.sortedBy(query.sorter);
+        } else if (query.order != null) {
+            page.orderBy(query.order, query.descending);
+        }
+        return page;
+    }
+
+    private ProductQuery randomQuery(LocalDate today) {
+        ProductQuery query = new ProductQuery();
+        if (random.nextBoolean()) {
+            query.priceBetween(random.nextBoolean() ? null : BigDecimal.valueOf(100 + random.nextInt(15) * 25, 2),
+                    random.nextBoolean() ? null : BigDecimal.valueOf(100 + random.nextInt(15) * 25, 2));
+        }
+        if (random.nextBoolean()) {
+            query.ratingBetween(random.nextBoolean() ? null : Rateable.convert(random.nextInt(6)),
+                    random.nextBoolean() ? null : Rateable.convert(random.nextInt(6)));
+        }
+        if (random.nextInt(3) == 0) {
+            query.bestBeforeBetween(today.plusDays(random.nextInt(9) - 4), today.plusDays(random.nextInt(9) - 4));
+        }
+        if (random.nextInt(4) == 0) {
+            int divisor = 2 + random.nextInt(3);
+            query.filter(product -> product.getId() % divisor != 0);
+        }
+        int order = random.nextInt(6);
+        if (order < 4) {
+            query.orderBy(ProductQuery.Order.values()[order], random.nextBoolean());
+        } else if (order == 4) {
+            query.sortedBy(Comparator.comparing(Product::getName).reversed());
+        }
+        if (random.nextBoolean()) {
+            query.offset(random.nextInt(20));
+        }
+        if (random.nextBoolean()) {
+            query.limit(random.nextInt(30));
+        }
+        return query;
+    }
+
+    /**
+     * products of the query found one by one, all matching products of query without order
+     */
+    private List<Product> expected(ProductQuery query) {
+        Predicate<Product> matches = query::matches;
+        List<Product> selected = products.values().stream().filter(matches).collect(Collectors.toList());
+        if (query.sorter != null) {
+            selected.sort(query.sorter.thenComparingInt(Product::getId));
+        } else if (query.order != null) {
+            selected.sort(ORDERS.get(query.order));
+            if (query.descending) {
+                Collections.reverse(selected);
+            }
+        } else {
+            selected.sort(ORDERS.get(ProductQuery.Order.ID));
+            return selected;
+        }
+        return selected.stream().skip(query.offset).limit(query.limit).collect(Collectors.toList());
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+}
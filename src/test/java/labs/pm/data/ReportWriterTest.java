@@ -0,0 +1,102 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@code ReportWriterTest} submits reports to {@link ReportWriter} in a temporary folder
+ * before, during and after close, and checks that every future completes.
+ * @author mserge
+ * @version 1
+ */
+class ReportWriterTest {
+    private static final long TIMEOUT = 10;
+
+    @TempDir
+    Path folder;
+
+    private ReportWriter writer;
+
+    @AfterEach
+    void close() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    @Test
+    void writesReportsSubmittedBeforeClose() throws Exception {
+        writer = new ReportWriter(4, 2);
+        List<CompletableFuture<Path>> written = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            written.add(writer.submit(folder.resolve("report" + i + ".txt"), content(i)));
+        }
+        writer.close();
+        for (int i = 0; i < 10; i++) {
+            Path file = written.get(i).get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals("Report " + i, Files.readString(file, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void failsReportSubmittedAfterClose() throws Exception {
+        writer = new ReportWriter(4, 1);
+        writer.close();
+        writer.close();
+        for (int i = 0; i < 3; i++) {
+            CompletableFuture<Path> late = writer.submit(folder.resolve("late" + i + ".txt"), content(i));
+            assertTrue(late.isDone());
+            ExecutionException e = assertThrows(ExecutionException.class, late::get);
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+        assertEquals(0, Files.list(folder).count());
+    }
+
+    @Test
+    void completesReportsSubmittedWhileClosing() throws Exception {
+        writer = new ReportWriter(2, 1);
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CompletableFuture<Path>>> submitted = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                int report = i;
+                submitted.add(clients.submit(() -> writer.submit(folder.resolve("report" + report + ".txt"),
+                        content(report))));
+                if (i == 200) {
+                    writer.close();
+                }
+            }
+            for (Future<CompletableFuture<Path>> future : submitted) {
+                CompletableFuture<Path> done = future.get(TIMEOUT, TimeUnit.SECONDS);
+                try {
+                    assertTrue(Files.exists(done.get(TIMEOUT, TimeUnit.SECONDS)));
+                } catch (ExecutionException e) {
+                    assertEquals(IllegalStateException.class, e.getCause().getClass());
+                }
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static byte[] content(int i) {
+        return ("Report " + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
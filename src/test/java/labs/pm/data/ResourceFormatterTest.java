@@ -0,0 +1,84 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@code ResourceFormatterTest} compares products, reviews and prices rendered by {@link ResourceFormatter}
+ * with the same patterns rendered by {@link MessageFormat} and currency {@link NumberFormat}.
+ * Locales are the ones loaded at start and ones loaded on first use.
+ * @author mserge
+ * @version 1
+ */
+class ResourceFormatterTest {
+    private static final List<String> LOCALES = List.of("en-GB", "ru-RU", "fr-FR", "de-DE", "ja-JP");
+    private static final List<String> PRICES = List.of("0", "0.00", "0.004", "0.005", "0.015", "1", "1.5", "1.99",
+            "2.345", "2.355", "12.3456", "999.995", "1000", "1234567.89", "98765432109876543210.5", "-0.01", "-1234.5");
+
+    @Test
+    void formatsPricesAsCurrencyFormat() {
+        for (String tag : LOCALES) {
+            Locale locale = Locale.forLanguageTag(tag);
+            ResourceFormatter formatter = new ResourceFormatter(locale);
+            NumberFormat reference = NumberFormat.getCurrencyInstance(locale);
+            for (String price : PRICES) {
+                BigDecimal value = new BigDecimal(price);
+                assertEquals(reference.format(value), formatter.formatPrice(value), tag + " " + price);
+            }
+        }
+    }
+
+    @Test
+    void formatsProductsAndReviewsAsMessageFormat() {
+        LocalDate date = LocalDate.of(2020, 10, 20);
+        List<Product> products = List.of(
+                new Drink(101, "Tea", new BigDecimal("1.99"), Rating.FOUR_STAR),
+                new Food(102, "Cake", new BigDecimal("1234.5"), Rating.NOT_RATED, date),
+                new Food(103, "\u0422\u043e\u0440\u0442 {0}", new BigDecimal("0.005"), Rating.FIVE_STAR, date.plusYears(3)));
+        List<Review> reviews = List.of(
+                new Review(Rating.FIVE_STAR, "Nice hot cup of tea"),
+                new Review(Rating.ONE_STAR, "It's {1} '{0}'"),
+                new Review(Rating.THREE_STAR, "\u041e\u0447\u0435\u043d\u044c \u0432\u043a\u0443\u0441\u043d\u043e"),
+                new Review(Rating.TWO_STAR, ""));
+        for (String tag : LOCALES) {
+            Locale locale = Locale.forLanguageTag(tag);
+            ResourceFormatter formatter = new ResourceFormatter(locale);
+            ResourceBundle bundle = ResourceBundle.getBundle("resources", locale);
+            NumberFormat currency = NumberFormat.getCurrencyInstance(locale);
+            DateTimeFormatter dates = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
+            for (Product product : products) {
+                StringBuilder out = new StringBuilder();
+                formatter.appendProduct(out, product);
+                assertEquals(MessageFormat.format(bundle.getString("product"), product.getName(),
+                        currency.format(product.getPrice()), product.getRating().getStars(),
+                        dates.format(product.getBestBefore())), out.toString(), tag + " " + product.getId());
+            }
+            for (Review review : reviews) {
+                StringBuilder out = new StringBuilder();
+                formatter.appendReview(out, review);
+                assertEquals(MessageFormat.format(bundle.getString("review"), review.getRating().getStars(),
+                        review.getComments()), out.toString(), tag + " " + review.getComments());
+            }
+        }
+    }
+
+    @Test
+    void loadsOtherLocalesOnFirstUse() {
+        assertFalse(ProductManager.getSupportedLocales().contains("de-DE"));
+        assertTrue(ProductManager.isSupportedLocale("de-DE"));
+        assertFalse(ProductManager.isSupportedLocale("xx-YY"));
+    }
+}
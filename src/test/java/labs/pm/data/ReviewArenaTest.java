@@ -0,0 +1,148 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * {@code ReviewArenaTest} packs reviews into {@link ReviewArena} and {@link ReviewList} and reads them back.
+ * Comments fill several chunks of every stripe, so references point into chunks other than the first one,
+ * and some comments are as long as a chunk or longer.
+ * @author mserge
+ * @version 1
+ */
+class ReviewArenaTest {
+    private static final int MEGABYTE = 1 << 20;
+
+    private final ReviewArena arena = new ReviewArena();
+
+    @Test
+    void readsReviewsBackAcrossChunks() {
+        List<Review> expected = new ArrayList<>();
+        ReviewList list = new ReviewList(arena);
+        int bytes = 0;
+        for (int i = 0; bytes < 8 * MEGABYTE; i++) {
+            String comments = "Review " + i + " " + "x".repeat(i % 1000);
+            bytes += comments.length();
+            Review review = new Review(Rateable.convert(i % 6), comments);
+            expected.add(review);
+            list.add(review);
+        }
+        assertReviews(expected, list);
+        assertEquals(expected.size(), arena.getDistinct());
+    }
+
+    @Test
+    void readsLongAndNonAsciiComments() {
+        List<Review> expected = new ArrayList<>();
+        ReviewList list = new ReviewList(arena);
+        String cyrillic = "\u041e\u0447\u0435\u043d\u044c \u0432\u043a\u0443\u0441\u043d\u043e";
+        String[] comments = {
+                "", null, cyrillic, "Tr\u00e8s bon \u2615", "\ud83c\udf70 \u0442\u043e\u0440\u0442",
+                "a".repeat(MEGABYTE - 4), "b".repeat(MEGABYTE), "c".repeat(MEGABYTE + 1),
+                "\u0434".repeat(MEGABYTE / 2 + 1), "d".repeat(1 << 18), "e".repeat((1 << 18) - 4),
+                "short after long", cyrillic.repeat(1000)
+        };
+        for (int i = 0; i < comments.length; i++) {
+            Review review = new Review(Rateable.convert(i % 6), comments[i]);
+            expected.add(review);
+            list.add(review);
+        }
+        assertReviews(expected, list);
+        assertNull(list.get(1).getComments());
+    }
+
+    @Test
+    void keepsRatingApartFromStripeOfComment() {
+        Set<Long> stripes = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            for (Rating rating : Rating.values()) {
+                long packed = arena.pack(rating, "Comment " + i);
+                stripes.add(packed >>> 56 & 0xF);
+                Review review = arena.review(packed);
+                assertEquals(rating, review.getRating());
+                assertEquals("Comment " + i, review.getComments());
+            }
+        }
+        assertEquals(16, stripes.size());
+        assertEquals(1000, arena.getDistinct());
+    }
+
+    @Test
+    void storesEachDistinctCommentOnce() {
+        ReviewList first = new ReviewList(arena);
+        ReviewList second = new ReviewList(arena);
+        for (int i = 0; i < 5000; i++) {
+            first.add(new Review(Rating.FIVE_STAR, "Comment " + (i % 100)));
+            second.add(new Review(Rating.ONE_STAR, "Comment " + (i % 150)));
+        }
+        assertEquals(150, arena.getDistinct());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("Comment " + (i % 100), first.get(i).getComments());
+            assertEquals(Rating.ONE_STAR, second.get(i).getRating());
+            assertEquals("Comment " + (i % 150), second.get(i).getComments());
+        }
+    }
+
+    @Test
+    void appendsCommentsConcurrently() throws Exception {
+        int threads = 8;
+        int reviews = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                Callable<List<String>> task = () -> {
+                    ReviewList list = new ReviewList(arena);
+                    for (int i = 0; i < reviews; i++) {
+                        list.add(new Review(Rateable.convert(i % 6), comments(thread, i)));
+                    }
+                    List<String> read = new ArrayList<>();
+                    for (int i = 0; i < list.size(); i++) {
+                        Review review = list.get(i);
+                        assertEquals(Rateable.convert(i % 6), review.getRating());
+                        read.add(review.getComments());
+                    }
+                    return read;
+                };
+                results.add(executor.submit(task));
+            }
+            for (int t = 0; t < threads; t++) {
+                List<String> read = results.get(t).get();
+                for (int i = 0; i < reviews; i++) {
+                    assertEquals(comments(t, i), read.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(500 + threads * reviews / 2, arena.getDistinct());
+    }
+
+    /**
+     * @return every other comment is shared by all threads
+     */
+    private static String comments(int thread, int i) {
+        return i % 2 == 0 ? "Shared " + (i / 2 % 500) : "Thread " + thread + " review " + i + "z".repeat(i % 300);
+    }
+
+    private static void assertReviews(List<Review> expected, ReviewList list) {
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Review review = list.get(i);
+            assertEquals(expected.get(i).getRating(), review.getRating(), "review " + i);
+            assertEquals(expected.get(i).getComments(), review.getComments(), "review " + i);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * {@code SortedIndexTest} compares ranges of {@link SortedIndex} with products of the same range
+ * selected from a list and sorted, after random additions, removals and updates.
+ * Prices are few, so many products share the key and are ordered by id.
+ * @author mserge
+ * @version 1
+ */
+class SortedIndexTest {
+    private static final Comparator<Product> ORDER = Comparator.comparing(Product::getPrice).thenComparingInt(Product::getId);
+
+    private final Random random = new Random(42);
+
+    @Test
+    void selectsRangesAsSortedList() {
+        Map<Integer, Product> products = new HashMap<>();
+        for (int id = 0; id < 300; id++) {
+            products.put(id, drink(id, random.nextInt(20)));
+        }
+        SortedIndex<BigDecimal> index = new SortedIndex<>(Product::getPrice).build(products.values());
+        assertRanges(index, products);
+
+        for (int i = 0; i < 2000; i++) {
+            int id = random.nextInt(400);
+            Product old = products.get(id);
+            int operation = random.nextInt(3);
+            if (old == null) {
+                Product product = drink(id, random.nextInt(20));
+                index = index.add(product);
+                products.put(id, product);
+            } else if (operation == 0) {
+                index = index.remove(old);
+                products.remove(id);
+            } else {
+                Product product = operation == 1 ? old.applyRating(Rating.FIVE_STAR) : drink(id, random.nextInt(20));
+                index = index.update(old, product);
+                products.put(id, product);
+            }
+            if (i % 100 == 0) {
+                assertRanges(index, products);
+            }
+        }
+        assertRanges(index, products);
+    }
+
+    @Test
+    void findsProductByKeyAndId() {
+        Product tea = drink(1, 5);
+        Product coffee = drink(2, 5);
+        SortedIndex<BigDecimal> index = new SortedIndex<>(Product::getPrice).build(List.of(tea, coffee));
+        assertSame(tea, index.get(tea.getPrice(), 1));
+        assertSame(coffee, index.get(coffee.getPrice(), 2));
+        assertNull(index.get(tea.getPrice(), 3));
+        assertNull(index.get(BigDecimal.ONE, 1));
+
+        Product rated = tea.applyRating(Rating.FOUR_STAR);
+        index = index.update(tea, rated);
+        assertSame(rated, index.get(tea.getPrice(), 1));
+        assertEquals(2, index.size());
+        assertEquals(0, index.clear().size());
+    }
+
+    @Test
+    void continuesAfterLastProductOfPage() {
+        Map<Integer, Product> products = new HashMap<>();
+        for (int id = 0; id < 200; id++) {
+            products.put(id, drink(id, random.nextInt(10)));
+        }
+        SortedIndex<BigDecimal> index = new SortedIndex<>(Product::getPrice).build(products.values());
+        for (int pageSize : new int[]{1, 7, 50, 500}) {
+            for (boolean descending : new boolean[]{false, true}) {
+                BigDecimal from = price(2);
+                BigDecimal to = price(7);
+                List<Product> pages = new ArrayList<>();
+                Product last = null;
+                while (true) {
+                    List<Product> page = (last == null ? index.products(from, to, descending)
+                            : index.products(from, to, descending, last.getPrice(), last.getId()))
+                            .limit(pageSize).collect(Collectors.toList());
+                    pages.addAll(page);
+                    if (page.size() < pageSize) {
+                        break;
+                    }
+                    last = page.get(page.size() - 1);
+                }
+                assertEquals(expected(products, from, to, descending), pages, "page size " + pageSize);
+            }
+        }
+    }
+
+    private void assertRanges(SortedIndex<BigDecimal> index, Map<Integer, Product> products) {
+        assertEquals(products.size(), index.size());
+        for (int i = 0; i < 20; i++) {
+            BigDecimal from = random.nextInt(5) == 0 ? null : price(random.nextInt(22) - 1);
+            BigDecimal to = random.nextInt(5) == 0 ? null : price(random.nextInt(22) - 1);
+            for (boolean descending : new boolean[]{false, true}) {
+                List<Product> expected = expected(products, from, to, descending);
+                List<Product> actual = index.products(from, to, descending).collect(Collectors.toList());
+                assertEquals(ids(expected), ids(actual), from + ".." + to + (descending ? " descending" : ""));
+                for (int j = 0; j < actual.size(); j++) {
+                    assertSame(products.get(actual.get(j).getId()), actual.get(j));
+                }
+            }
+            int cap = random.nextInt(50);
+            assertEquals(Math.min(cap, expected(products, from, to, false).size()), index.count(from, to, cap));
+        }
+    }
+
+    private static List<Product> expected(Map<Integer, Product> products, BigDecimal from, BigDecimal to,
+                                          boolean descending) {
+        List<Product> expected = products.values().stream()
+                .filter(product -> (from == null || product.getPrice().compareTo(from) >= 0)
+                        && (to == null || product.getPrice().compareTo(to) <= 0))
+                .sorted(ORDER)
+                .collect(Collectors.toList());
+        if (descending) {
+            Collections.reverse(expected);
+        }
+        return expected;
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+
+    private static Product drink(int id, int price) {
+        return new Drink(id, "Drink " + id, price(price), Rating.NOT_RATED);
+    }
+
+    private static BigDecimal price(int price) {
+        return BigDecimal.valueOf(price, 1);
+    }
+}